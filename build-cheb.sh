@@ -0,0 +1,22 @@
+#! /bin/bash
+
+# Fit Chebyshev tables to the sampled longitude tables.  Intervals and numbers of
+# coefficients were chosen to keep the fit within about 1 arcsecond of the samples.
+# Between samples they differ from interpolating the .lng tables by up to 11" for
+# mercury, 6" for the moon and 3" for the others.  Each table runs to the last
+# sample, as the .lng tables do.
+# The sun is sampled too sparsely to gain anything, so it keeps its .lng table.
+
+class=com.marklipson.astrotools.ProcessHorizonData
+path=src/com/marklipson/astrologyclock/resources/ephemeris
+
+java -cp bin $class -cheb $path/moon1.lng moon $path/moon1.cheb 12 10
+java -cp bin $class -cheb $path/moon2.lng moon $path/moon2.cheb 12 10
+java -cp bin $class -cheb $path/mercury.lng mercury $path/mercury.cheb 16 9
+java -cp bin $class -cheb $path/venus.lng venus $path/venus.cheb 48 12
+java -cp bin $class -cheb $path/mars.lng mars $path/mars.cheb 48 10
+java -cp bin $class -cheb $path/jupiter.lng jupiter $path/jupiter.cheb 72 9
+java -cp bin $class -cheb $path/saturn.lng saturn $path/saturn.cheb 96 11
+java -cp bin $class -cheb $path/uranus.lng uranus $path/uranus.cheb 112 8
+java -cp bin $class -cheb $path/neptune.lng neptune $path/neptune.cheb 240 10
+java -cp bin $class -cheb $path/pluto.lng pluto $path/pluto.cheb 240 10
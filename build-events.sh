@@ -0,0 +1,13 @@
+#! /bin/bash
+
+# Build the catalog of ingresses, stations, exact aspects and lunar phases for 1600
+# to 2200 (see EventIndex).  Searches look up ingresses and stations in it rather
+# than scanning for them.  Rebuild it whenever the ephemeris tables change.
+
+path=src/com/marklipson/astrologyclock/resources/events
+
+# the catalog must be built by scanning, not from an older catalog
+rm -f bin/com/marklipson/astrologyclock/resources/events/events.bin
+mkdir -p $path bin/com/marklipson/astrologyclock/resources/events
+java -Xmx1g -cp bin com.marklipson.astrotools.BuildEventIndex $path/events.bin
+cp $path/events.bin bin/com/marklipson/astrologyclock/resources/events/
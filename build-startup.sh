@@ -0,0 +1,32 @@
+#! /bin/bash
+
+# Prepare for fast start-up.
+#
+# 1. Write the atlas as a pre-parsed snapshot.  It goes in the extended resources
+#    JAR (with the large US atlas it was built from) and is used instead of the
+#    text files whenever it is found.
+#
+# 2. With -cds (Java 13 or later), record a class data sharing archive of the
+#    classes loaded while drawing one chart.  Pass the archive to the server's JVM,
+#    for instance in CATALINA_OPTS:
+#      -XX:SharedArchiveFile=jastro.jsa
+#    The JDK classes (AWT, ImageIO, etc.) are shared wherever it is used; our own
+#    classes only when the class path matches the one below.  Rebuild it whenever
+#    the JARs or the JVM change; a stale archive is ignored.
+#
+# The ephemeris tables can also be mapped from a folder rather than read from
+# resources, with -Djastro.ephemeris.dir=<folder containing the .cheb/.lng/.elem files>.
+#
+# To see where start-up time goes, run with -Djastro.startup.profile=true.
+
+path=src/com/marklipson/astrologyclock/resources/atlas
+
+# the snapshot must be built from the text files, not from an older snapshot
+rm -f bin/com/marklipson/astrologyclock/resources/atlas/atlas.bin
+java -cp bin com.marklipson.astrotools.AtlasSnapshot $path/atlas.bin
+cp $path/atlas.bin bin/com/marklipson/astrologyclock/resources/atlas/
+
+if [ "$1" == "-cds" ]; then
+  java -XX:ArchiveClassesAtExit=jastro.jsa -Djava.awt.headless=true \
+    -cp bin:lib/servlet.jar com.marklipson.astrologyclock.Generator > /dev/null
+fi
@@ -34,9 +34,10 @@ public class Aspects
     public Aspects( ChartWheel wheel, ChartWheel.PlanetRing ring )
     {
         aspects.clear();
+        ChartSnapshot chart = ring.getSnapshot();
         for (int n1=0; n1 < ring.planets.length-1; n1++)
         {
-            double p1 = ring.planets[n1].obsLongitude;
+            double p1 = chart.longitude( ring.planets[n1].id );
             double p1d = ring.planets[n1].tmpPos;
             if (! wheel.isPlanetVisible( ring.planets[n1].name ))
                 continue;
@@ -47,7 +48,7 @@ public class Aspects
             Point pt1 = wheel.polarPosition( p1d, wheel.rPlanetDots );
             for (int n2=n1+1; n2 < ring.planets.length; n2++)
             {
-                double p2 = ring.planets[n2].obsLongitude;
+                double p2 = chart.longitude( ring.planets[n2].id );
                 double p2d = ring.planets[n2].tmpPos;
                 if (! wheel.isPlanetVisible( ring.planets[n2].name ))
                     continue;
@@ -1,5 +1,6 @@
 package com.marklipson.astrologyclock;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -9,6 +10,7 @@ public class ChartData
   public static final double d2r = Math.PI / 180;
 
   static private Map<String,PlanetInfo> planetMap = new HashMap<String,PlanetInfo>();
+  static private PlanetInfo[] planetsById = new PlanetInfo[ Ephemeris.NBODIES ];
   static private PlanetInfo EARTH, MOON, SUN;
 
   // ZODIAC CONSTANTS
@@ -34,6 +36,16 @@ public class ChartData
     public OrbElems()
     {
     }
+    public OrbElems( OrbElems other )
+    {
+        refFrame = other.refFrame;
+        radius = other.radius;
+        a = other.a;            e = other.e;
+        peri = other.peri;      dPeri = other.dPeri;
+        node = other.node;      dNode = other.dNode;
+        incl = other.incl;      dIncl = other.dIncl;
+        lng = other.lng;        dLng = other.dLng;
+    }
     public OrbElems( double r, double _a, double _e,
         double p, double dp, double n, double dn, double i, double di, double l, double dl )
     {
@@ -49,6 +61,14 @@ public class ChartData
      * Calculate heliocentric rectangular coordinates for a given time.
      */
     public double[] position( double tJD )
+    {
+        return position( tJD, new double[3] );
+    }
+    /**
+     * Calculate heliocentric rectangular coordinates for a given time into 'pos',
+     * which must hold 3 values.  Returns 'pos'.
+     */
+    public double[] position( double tJD, double[] pos )
     {
         // convert time to julian centuries (the orbital elements use this time frame)
         double t = (tJD - refFrame) / 36525;
@@ -61,27 +81,22 @@ public class ChartData
         // adjust elements to the algorithm
         p -= n;
         M -= p + n;
-        // Find true anomaly (v)
-        double v;
-        {
-            double E = M;
-            for (int iter=0; iter < 6; iter++)
-                E = M + e * Math.sin(E);
-            if (Math.cos(E/2.0) != 0.0)
-                v = 2.0 * Math.atan( Math.sqrt( (1.0 + e) / (1.0 - e) ) * Math.tan( E / 2.0 ) );
-            else
-                v = E;
-        }
-        // find true distance (r)
-        double r = a * ((1.0 - e*e) / (1.0 + e * Math.cos(v)));
+        // find eccentric anomaly (E), and from it the true anomaly (v) and distance (r)
+        double E = kepler( M, e );
+        double sinE = Math.sin( E );
+        double cosE = Math.cos( E );
+        double d = 1.0 - e * cosE;
+        double cosV = (cosE - e) / d;
+        double sinV = Math.sqrt( 1.0 - e*e ) * sinE / d;
+        double r = a * d;
         // find and return rectangular position
-        double pos[] = new double[3];
         {
-            // find offset from ascending node
-            double w = p + v;
+            // find offset from ascending node (w = p + v)
+            double sinP = Math.sin( p );
+            double cosP = Math.cos( p );
+            double sinW = sinP * cosV + cosP * sinV;
+            double cosW = cosP * cosV - sinP * sinV;
             // intermediate values
-            double sinW = Math.sin( w );
-            double cosW = Math.cos( w );
             double sinNode = Math.sin( n ); // was: node (not sure why dNode was being ignored)
             double cosNode = Math.cos( n );
             double cosIncl = Math.cos( i ); // was: incl (not sure why dIncl was being ignored)
@@ -92,17 +107,42 @@ public class ChartData
         }
         return pos;
     }
+    /**
+     * Solve Kepler's equation, M = E - e sin(E), for the eccentric anomaly E.
+     */
+    static double kepler( double M, double e )
+    {
+        // Newton-Raphson, starting from a guess that is good to O(e^3) for ordinary
+        // orbits, or one that converges reliably for very eccentric ones
+        M -= Math.rint( M / (Math.PI*2) ) * (Math.PI*2);
+        double E;
+        if (e < 0.8)
+            E = M + e * Math.sin( M ) * (1.0 + e * Math.cos( M ));
+        else
+            E = M + 0.85 * e * Math.signum( Math.sin( M ) );
+        for (int iter=0; iter < 30; iter++)
+        {
+            double dE = (E - e * Math.sin( E ) - M) / (1.0 - e * Math.cos( E ));
+            E -= dE;
+            if (Math.abs( dE ) < 1e-12)
+                break;
+        }
+        return E;
+    }
   }
 
   static private class PlanetInfo
   {
       public String name;
+      public int id;
       public OrbElems orbElems;
       PlanetInfo( String name, OrbElems oe )
       {
         this.name = name;
+        this.id = Ephemeris.bodyId( name );
         this.orbElems = oe;
         planetMap.put( name.toLowerCase(), this );
+        planetsById[ id ] = this;
       }
   }
   static
@@ -124,19 +164,53 @@ public class ChartData
     MOON = new PlanetInfo( "Moon", new OrbElems( 0.27249, 0.002569, 0.0549, 5.83515, 71.01804, 4.5236, -33.75714, 0.089804, 0, 4.72, 8399.709 ) );
   }
 
+  /**
+   * Scratch space for position calculations, so that callers making a lot of them
+   * (ChartSnapshot, the batch lookups) don't allocate for each one.  Not to be
+   * shared between threads.
+   */
+  static class Work
+  {
+    final double[] vP = new double[3];
+    final OrbElems elems = new OrbElems();
+  }
+
+  /**
+   * Find the body handle for a planet name, or -1.
+   */
+  public static int bodyId( String planetKey )
+  {
+    PlanetInfo planet = planetMap.get( planetKey.toLowerCase() );
+    return (planet == null) ? -1 : planet.id;
+  }
+  private static PlanetInfo planetInfo( int body )
+  {
+    if (body < 0  ||  body >= planetsById.length)
+      return null;
+    return planetsById[ body ];
+  }
+
   /**
    * Get orbital elements.
    */
   public static OrbElems getOrbitalElements( String planetKey, double tJD )
   {
-    OrbElems elems = Ephemeris.getInstance().lookupOrbElems( planetKey, tJD );
+    return getOrbitalElements( bodyId( planetKey ), tJD );
+  }
+  public static OrbElems getOrbitalElements( int body, double tJD )
+  {
+    return getOrbitalElements( Ephemeris.getInstance(), body, tJD );
+  }
+  public static OrbElems getOrbitalElements( Ephemeris ephem, int body, double tJD )
+  {
+    OrbElems elems = ephem.orbElems( body, tJD );
     if (elems != null)
       return elems;
-    PlanetInfo planet = planetMap.get( planetKey.toLowerCase() );
-    if (planet == null)
+    PlanetInfo planet = planetInfo( body );
+    if (planet == null  ||  planet.orbElems == null)
       return null;
-    // TODO the returned object is MODIFIABLE!!!
-    return planet.orbElems;
+    // copy, so the caller can't change the built-in elements
+    return new OrbElems( planet.orbElems );
   }
 
   /**
@@ -146,14 +220,19 @@ public class ChartData
   {
     return planetMap.containsKey( planet.toLowerCase() );
   }
+  /**
+   * Reasonable time range for calculations.
+   */
+  public static final double MINIMUM_TIME = 1721411;
+  public static final double MAXIMUM_TIME = 2816795;
   /**
    * Check reasonable time range for calculations.
    */
   public static boolean isTimeWithinMaximumBounds( double t )
   {
-    if (t < 1721411)
+    if (t < MINIMUM_TIME)
       return false;
-    if (t > 2816795)
+    if (t > MAXIMUM_TIME)
       return false;
     return true;
   }
@@ -162,20 +241,83 @@ public class ChartData
    */
   public static double geoLongitude( String planetKey, double t )
   {
-      PlanetInfo planet = planetMap.get( planetKey.toLowerCase() );
+      return geoLongitude( bodyId( planetKey ), t );
+  }
+  public static double geoLongitude( int body, double t )
+  {
+      return geoLongitude( Ephemeris.getInstance(), body, t );
+  }
+  /**
+   * Calculate geocentric longitude using the given ephemeris, so that callers which
+   * hold on to an Ephemeris don't need to look up the shared instance each time.
+   */
+  public static double geoLongitude( Ephemeris ephem, int body, double t )
+  {
+      return geoLongitude( ephem, body, t, null, null );
+  }
+  /**
+   * Calculate geocentric longitude, given the earth's position at time 't' if it is
+   * already known (see earthPosition()), and optionally some scratch space.
+   */
+  static double geoLongitude( Ephemeris ephem, int body, double t, double[] vEarth, Work work )
+  {
+      PlanetInfo planet = planetInfo( body );
       if (planet == null)
           return Double.NaN;
       if (planet == EARTH)
           return Double.NaN;
       // check for an ephemeris entry
-      Double lng = Ephemeris.getInstance().lookupLongitude( planet.name, t );
-      if (lng != null)
+      double lng = ephem.longitude( body, t );
+      if (! Double.isNaN( lng ))
           return lng;
       // use moon calculation method as backup
       if (planet == MOON)
           return calculateMoon( t );
+      return elementGeoLongitude( ephem, planet, t, vEarth, work );
+  }
+  /**
+   * Calculate geocentric longitudes for a series of times, setting out[n] to the
+   * same value geoLongitude() gives for t[n].  Ephemeris tables are looked up once
+   * per run of times rather than once per time, so times in order work best.
+   */
+  public static void geoLongitudes( Ephemeris ephem, int body, double[] t, double[] out )
+  {
+      PlanetInfo planet = planetInfo( body );
+      if (planet == null  ||  planet == EARTH)
+      {
+          Arrays.fill( out, 0, t.length, Double.NaN );
+          return;
+      }
+      ephem.longitudes( body, t, out );
+      // fill in times not covered by the ephemeris
+      double[] vEarth = null;
+      Work work = null;
+      for (int n=0; n < t.length; n++)
+      {
+          if (! Double.isNaN( out[n] ))
+              continue;
+          if (planet == MOON)
+              out[n] = calculateMoon( t[n] );
+          else
+          {
+              if (work == null)
+              {
+                  vEarth = new double[3];
+                  work = new Work();
+              }
+              out[n] = elementGeoLongitude( ephem, planet, t[n], earthPosition( t[n], vEarth ), work );
+          }
+      }
+  }
+  /**
+   * Calculate geocentric longitude from orbital elements, relative to the earth.
+   */
+  private static double elementGeoLongitude( Ephemeris ephem, PlanetInfo planet, double t, double[] vEarth, Work work )
+  {
+      if (work == null)
+          work = new Work();
       // check for orbital elements in ephemeris
-      OrbElems elems = Ephemeris.getInstance().lookupOrbElems( planet.name, t );
+      OrbElems elems = ephem.orbElems( planet.id, t, work.elems );
       // check for orbital elements stored in code
       if (elems == null)
           elems = planet.orbElems;
@@ -184,10 +326,10 @@ public class ChartData
           return Double.NaN;
 
       // calculate position of earth
-      double[] vEarth = EARTH.orbElems.position( t );
-      // TODO cache this
+      if (vEarth == null)
+          vEarth = earthPosition( t );
       // calculate position of planet
-      double[] vP = elems.position( t );
+      double[] vP = elems.position( t, work.vP );
       // calculate the longitude (from earth)
       double x = mod2pi( Math.atan2( vP[1] - vEarth[1], vP[0] - vEarth[0] ) );
       return x;
@@ -197,23 +339,37 @@ public class ChartData
   //
   static public double helioLongitude( String planetKey, double t )
   {
-      PlanetInfo planet = planetMap.get( planetKey.toLowerCase() );
+      return helioLongitude( bodyId( planetKey ), t );
+  }
+  static public double helioLongitude( int body, double t )
+  {
+      return helioLongitude( Ephemeris.getInstance(), body, t );
+  }
+  static public double helioLongitude( Ephemeris ephem, int body, double t )
+  {
+      return helioLongitude( ephem, body, t, null, null );
+  }
+  static double helioLongitude( Ephemeris ephem, int body, double t, double[] vEarth, Work work )
+  {
+      PlanetInfo planet = planetInfo( body );
       if (planet == null)
           return Double.NaN;
       // TODO should be NaN - check references before changing
       if (planet == SUN)
           return 0;
-      double vP[];
+      if (work == null)
+          work = new Work();
+      double[] vP = work.vP;
       if (planet == MOON)
-          vP = helioPos( planetKey, t );
+          moonPos( t, vEarth, vP );
       else
       {
-          OrbElems elems = Ephemeris.getInstance().lookupOrbElems( planetKey.toString(), t );
+          OrbElems elems = ephem.orbElems( body, t, work.elems );
           if (elems == null)
             elems = planet.orbElems;
           if (elems == null)
             return Double.NaN;
-          vP = elems.position( t );
+          elems.position( t, vP );
       }
       return mod2pi( Math.atan2( vP[1], vP[0] ) );
   }
@@ -222,18 +378,15 @@ public class ChartData
    */
   public static double[] helioPos( String planetKey, double t )
   {
-      PlanetInfo planet = planetMap.get( planetKey.toLowerCase() );
+      return helioPos( bodyId( planetKey ), t );
+  }
+  public static double[] helioPos( int body, double t )
+  {
+      PlanetInfo planet = planetInfo( body );
       if (planet == null)
           return null;
       if (planet == MOON)
-      {
-          double lng = calculateMoon( t );
-          double a = MOON.orbElems.a;
-          double[] pos = EARTH.orbElems.position( t );
-          pos[0] += Math.cos(lng)*a;
-          pos[1] += Math.sin(lng)*a;
-          return pos;
-      }
+          return moonPos( t, null, new double[3] );
       else if (planet == SUN)
       {
           double[] pos = new double[3];
@@ -244,10 +397,38 @@ public class ChartData
           return planet.orbElems.position( t );
   }
 
+  /**
+   * Heliocentric position of the moon into 'pos', from the earth's position if it
+   * is known.
+   */
+  private static double[] moonPos( double t, double[] vEarth, double[] pos )
+  {
+      double lng = calculateMoon( t );
+      double a = MOON.orbElems.a;
+      if (vEarth != null)
+          System.arraycopy( vEarth, 0, pos, 0, 3 );
+      else
+          earthPosition( t, pos );
+      pos[0] += Math.cos(lng)*a;
+      pos[1] += Math.sin(lng)*a;
+      return pos;
+  }
+  /**
+   * Rectangular heliocentric coordinates of the earth.
+   */
+  static double[] earthPosition( double t )
+  {
+      return EARTH.orbElems.position( t );
+  }
+  static double[] earthPosition( double t, double[] pos )
+  {
+      return EARTH.orbElems.position( t, pos );
+  }
+
   //
   // Calculate ascendant, midheaven, etc...
   //
-  private static double calcGMST( double t_jd )
+  static double calcGMST( double t_jd )
   {
       /*
       double T = (t - 2451545.0) / 36525.0;
@@ -270,7 +451,7 @@ public class ChartData
       gmst -= Math.floor(gmst);
       return gmst * 2*Math.PI;
   }
-  private static double calcOE( double t )
+  static double calcOE( double t )
   {
       // Make time relative to J2000, centuries.
       double tC = (t - 2451545.0) / 36525.0;
@@ -287,6 +468,13 @@ public class ChartData
       double oe = calcOE( t );
       // RAMC
       double ramc = calcGMST( t ) - lng;
+      return calcAscendantRAMC( ramc, oe, lat );
+  }
+  /**
+   * Calculate ascendant from sidereal time and obliquity (see calcGMST(), calcOE()).
+   */
+  static double calcAscendantRAMC( double ramc, double oe, double lat )
+  {
       double cl = Math.cos( lat );
       if (cl == 0)
           return -1;
@@ -305,6 +493,10 @@ public class ChartData
   {
       double oe = calcOE( t );
       double ramc = calcGMST( t ) - lng;
+      return calcMidheavenRAMC( ramc, oe );
+  }
+  static double calcMidheavenRAMC( double ramc, double oe )
+  {
       double v1 = Math.sin(ramc);
       double v2 = Math.cos(ramc) * Math.cos(oe);
       double mc = Math.atan2( v1, v2 );
@@ -312,6 +504,59 @@ public class ChartData
           mc += Math.PI*2;
       return mc;
   }
+  /**
+   * Find the sidereal time at which the midheaven is at a given longitude, i.e. the
+   * inverse of calcMidheavenRAMC().
+   */
+  static double calcRAMCForMidheaven( double mc, double oe )
+  {
+      return mod2pi( Math.atan2( Math.sin(mc) * Math.cos(oe), Math.cos(mc) ) );
+  }
+  /**
+   * Find the sidereal time at which the ascendant is at a given longitude, i.e. the
+   * inverse of calcAscendantRAMC().  NaN if that point of the ecliptic never rises.
+   */
+  static double calcRAMCForAscendant( double ac, double oe, double lat )
+  {
+      // calcAscendantRAMC() has cos(ramc) along sin(ac) and -(s + c*sin(ramc)) along
+      // cos(ac), so cos(ac)*cos(ramc) + c*sin(ac)*sin(ramc) = -s*sin(ac)
+      double s = Math.sin(oe)*Math.tan(lat);
+      double c = Math.cos(oe);
+      double r = Math.hypot( Math.cos(ac), c*Math.sin(ac) );
+      double x = -s*Math.sin(ac) / r;
+      if (Math.abs( x ) > 1)
+          return Double.NaN;
+      double phase = Math.atan2( c*Math.sin(ac), Math.cos(ac) );
+      double spread = Math.acos( x );
+      // of the two solutions, one is where the point sets
+      double ramc1 = mod2pi( phase + spread );
+      double ramc2 = mod2pi( phase - spread );
+      double err1 = Math.abs( Math.sin( (calcAscendantRAMC( ramc1, oe, lat ) - ac) / 2 ) );
+      double err2 = Math.abs( Math.sin( (calcAscendantRAMC( ramc2, oe, lat ) - ac) / 2 ) );
+      return (err1 <= err2) ? ramc1 : ramc2;
+  }
+  /**
+   * Rate at which sidereal time advances, radians per day.
+   */
+  static final double SIDEREAL_RATE = 2*Math.PI * 1.00273790935;
+  /**
+   * Find the time at which the sidereal time for a given longitude (see
+   * calcAscendant()) is 'ramc': the first such time from t0 on, or the nearest one
+   * to t0.
+   */
+  static double calcTimeForRAMC( double ramc, double lng, double t0, boolean after )
+  {
+      double t = t0;
+      for (int n=0; n < 3; n++)
+      {
+          double d = mod2pi( ramc - (calcGMST( t ) - lng) );
+          // sidereal time is close to linear, so the first step gets the day right
+          if (d > Math.PI  &&  ! (after  &&  n == 0))
+              d -= 2*Math.PI;
+          t += d / SIDEREAL_RATE;
+      }
+      return t;
+  }
 
   /**
    * Approximate longitude of moon - accurate to a quarter of a degree or so.\
@@ -442,8 +687,18 @@ public class ChartData
    */
   static double makeZodiacAdjustment( double t_jd, double x, int zodiac )
   {
-      if (zodiac == TROPICAL)
+      double adj = zodiacOffset( t_jd, zodiac );
+      if (adj == 0)
           return x;
+      return mod2pi( x + adj );
+  }
+  /**
+   * Offset of the selected zodiac from the tropical zodiac, or 0 for the tropical zodiac.
+   */
+  static double zodiacOffset( double t_jd, int zodiac )
+  {
+      if (zodiac == TROPICAL)
+          return 0;
       double adj = ChartData.calcSVP( t_jd );
       if (zodiac == RAMAN)
           adj += 2.333333 * d2r;
@@ -453,8 +708,8 @@ public class ChartData
           ;
       else
           // default to tropical
-          return x;
-      return mod2pi( x + adj );
+          return 0;
+      return adj;
   }
   
 }
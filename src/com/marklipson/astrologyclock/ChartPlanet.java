@@ -21,6 +21,8 @@ class ChartPlanet implements Comparable<ChartPlanet>, Cloneable
 	ChartWheel.PlanetRing ring;
 	// name of planet
 	String name;
+	// body handle (see Ephemeris)
+	int id;
 	// radius (in Earth radii)
 	public double radius;
 	// color
@@ -50,6 +52,7 @@ class ChartPlanet implements Comparable<ChartPlanet>, Cloneable
 		this.ring = ring;
 		// name of body
 		this.name = name;
+		this.id = planetIndex;
 		// physical characteristics
 		color = _c;
 		radius = r;
@@ -127,26 +130,37 @@ class ChartPlanet implements Comparable<ChartPlanet>, Cloneable
 		{
 			// calculate geo longitude
             if (parent.isHeliocentric())
-                obsLongitude = parent.helioLongitude( this, t.doubleValue() );
+                place( parent.helioLongitude( this, t.doubleValue() ) );
             else
-                obsLongitude = parent.geoLongitude( this, t.doubleValue() );
-			// find displayed location
-            if (parent.isSquare())
-            {
-              int sign = (int)((obsLongitude / ChartData.d2r) / 30);
-              Rectangle signBox = parent.getSquareSignBounds( sign ).getBounds();
-              int x = signBox.x + signBox.width/2;
-              int y = signBox.y + signBox.height/2;
-              posScreenDot = posScreenDot2 = posScreenSym = new Point(x,y);
-            }
-            else
-            {
-              posScreenDot = parent.polarPosition( obsLongitude, ring.rPlanetDots );
-              posScreenDot2 = parent.polarPosition( obsLongitude, ring.rPlanetDots2 );
-              posScreenSym = parent.polarPosition( obsLongitude, ring.rPlanetSyms );
-            }
+                place( parent.geoLongitude( this, t.doubleValue() ) );
 		}
 	}
+	/**
+	 * Take the position from a chart calculated for the whole ring.
+	 */
+	void refresh( ChartSnapshot snapshot )
+	{
+		place( snapshot.longitude( id ) );
+	}
+	private void place( double lng )
+	{
+		obsLongitude = lng;
+		// find displayed location
+        if (parent.isSquare())
+        {
+          int sign = (int)((obsLongitude / ChartData.d2r) / 30);
+          Rectangle signBox = parent.getSquareSignBounds( sign ).getBounds();
+          int x = signBox.x + signBox.width/2;
+          int y = signBox.y + signBox.height/2;
+          posScreenDot = posScreenDot2 = posScreenSym = new Point(x,y);
+        }
+        else
+        {
+          posScreenDot = parent.polarPosition( obsLongitude, ring.rPlanetDots );
+          posScreenDot2 = parent.polarPosition( obsLongitude, ring.rPlanetDots2 );
+          posScreenSym = parent.polarPosition( obsLongitude, ring.rPlanetSyms );
+        }
+	}
     
     /**
      * Get dimensions of planet's graphic.
@@ -194,15 +208,14 @@ class ChartPlanet implements Comparable<ChartPlanet>, Cloneable
             int px[] = new int[nSteps];
             int py[] = new int[nSteps];
             double dt = (maxError*2) / (nSteps-1);
+            double ts[] = new double[nSteps];
+            double lngs[] = new double[nSteps];
+            for (int n=0; n < nSteps; n++)
+              ts[n] = t0 + n * dt;
+            parent.longitudes( this, ts, lngs );
             for (int n=0; n < nSteps; n++)
             {
-              double t = t0 + n * dt;
-              double lng;
-              if (parent.isHeliocentric())
-                lng = parent.helioLongitude( this, t );
-              else
-                lng = parent.geoLongitude( this, t );
-              Point p = parent.polarPosition( lng, r0 );
+              Point p = parent.polarPosition( lngs[n], r0 );
               px[n] = p.x;
               py[n] = p.y;
             }
@@ -0,0 +1,97 @@
+package com.marklipson.astrologyclock;
+
+/**
+ * Everything shown in a chart, calculated at one instant.
+ *
+ * All the values are found in one pass, so the earth's position, the sidereal time
+ * and the zodiac adjustment are each calculated only once.  Angles are in radians
+ * and are adjusted for the selected zodiac.
+ */
+public class ChartSnapshot
+{
+  // what the snapshot was calculated for
+  public final double jd;
+  public final double lat, lng;
+  public final int zodiac;
+  public final boolean helio;
+  /**
+   * Longitude of each body, indexed by body handle (see Ephemeris, and ChartWheel
+   * for the lunar nodes).  NaN for anything that can't be placed, i.e. the earth in
+   * a geocentric chart.
+   */
+  public final double[] longitudes = new double[ Ephemeris.NBODIES ];
+  /**
+   * Ascendant and midheaven.
+   */
+  public final double ascendant, midheaven;
+  /**
+   * Cusps for the 10th, 11th, 2nd and 3rd houses (see ChartData.calcCusps()).
+   */
+  public final double[] cusps;
+  /**
+   * Offset of the selected zodiac from the tropical zodiac (the ayanamsa), or 0
+   * for the tropical zodiac.
+   */
+  public final double zodiacOffset;
+
+  /**
+   * Calculate a chart.
+   *
+   * @param ephem   ephemeris to look up positions in
+   * @param jd      time
+   * @param lat     latitude, radians
+   * @param lng     longitude, radians (west is positive)
+   * @param zodiac  ChartData.TROPICAL, RAMAN, etc.
+   * @param helio   heliocentric rather than geocentric positions
+   */
+  public ChartSnapshot( Ephemeris ephem, double jd, double lat, double lng, int zodiac, boolean helio )
+  {
+    this.jd = jd;
+    this.lat = lat;
+    this.lng = lng;
+    this.zodiac = zodiac;
+    this.helio = helio;
+    zodiacOffset = ChartData.zodiacOffset( jd, zodiac );
+    // bodies
+    double[] vEarth = ChartData.earthPosition( jd );
+    ChartData.Work work = new ChartData.Work();
+    for (int body=0; body < longitudes.length; body++)
+    {
+      double x;
+      if (helio)
+        x = ChartData.helioLongitude( ephem, body, jd, vEarth, work );
+      else if (body == ChartWheel.NORTHNODE)
+        x = ChartData.calculateMeanLunarNode( jd );
+      else if (body == ChartWheel.SOUTHNODE)
+        x = ChartData.mod2pi( ChartData.calculateMeanLunarNode( jd ) + Math.PI );
+      else
+        x = ChartData.geoLongitude( ephem, body, jd, vEarth, work );
+      longitudes[body] = adjust( x );
+    }
+    // angles
+    double oe = ChartData.calcOE( jd );
+    double ramc = ChartData.calcGMST( jd ) - lng;
+    ascendant = adjust( ChartData.calcAscendantRAMC( ramc, oe, lat ) );
+    midheaven = adjust( ChartData.calcMidheavenRAMC( ramc, oe ) );
+    cusps = ChartData.calcCusps( ascendant, midheaven );
+  }
+  /**
+   * Apply the zodiac adjustment to a tropical longitude.
+   */
+  private double adjust( double x )
+  {
+    if (zodiacOffset == 0)
+      return x;
+    return ChartData.mod2pi( x + zodiacOffset );
+  }
+
+  /**
+   * Longitude of a body, by handle.
+   */
+  public double longitude( int body )
+  {
+    if (body < 0  ||  body >= longitudes.length)
+      return Double.NaN;
+    return longitudes[ body ];
+  }
+}
@@ -85,6 +85,7 @@ public class ChartWheel extends Canvas implements ImageObserver, Runnable
   private int zodiac = TROPICAL;          // which zodiac to use
   private boolean enableInteraction = true; // user can drag planets, etc.
   private Map<String,Boolean> otherBodies = new HashMap<String,Boolean>();
+  private Ephemeris ephemeris = Ephemeris.getInstance(); // source of planetary positions
     
 	// display time threshold for planets (not for angles)
 	static final double ROUGH_TIME_THRESHOLD = 0.04;
@@ -100,23 +101,23 @@ public class ChartWheel extends Canvas implements ImageObserver, Runnable
   static final int FAGAN_BRADLEY = ChartData.FAGAN_BRADLEY;
     
 	// PLANET CONSTANTS
-	static final int SUN = 0;
-	static final int MERCURY = 1;
-	static final int VENUS = 2;
-	static final int EARTH = 3;
-	static final int MOON = 4;
-	static final int MARS = 5;
-	static final int JUPITER = 6;
-	static final int SATURN = 7;
-	static final int URANUS = 8;
-	static final int NEPTUNE = 9;
-	static final int PLUTO = 10;
+	static final int SUN = Ephemeris.SUN;
+	static final int MERCURY = Ephemeris.MERCURY;
+	static final int VENUS = Ephemeris.VENUS;
+	static final int EARTH = Ephemeris.EARTH;
+	static final int MOON = Ephemeris.MOON;
+	static final int MARS = Ephemeris.MARS;
+	static final int JUPITER = Ephemeris.JUPITER;
+	static final int SATURN = Ephemeris.SATURN;
+	static final int URANUS = Ephemeris.URANUS;
+	static final int NEPTUNE = Ephemeris.NEPTUNE;
+	static final int PLUTO = Ephemeris.PLUTO;
   static final int NORTHNODE = 11;
   static final int SOUTHNODE = 12;
-  static final int CHIRON = 13;
-  static final int CERES = 14;
-  static final int SEDNA = 15;
-	static final int NPLANETS = 16;
+  static final int CHIRON = Ephemeris.CHIRON;
+  static final int CERES = Ephemeris.CERES;
+  static final int SEDNA = Ephemeris.SEDNA;
+	static final int NPLANETS = Ephemeris.NBODIES;
 
 	// TOOLS
 	// the most recent position for the Earth is stored here:
@@ -134,6 +135,7 @@ public class ChartWheel extends Canvas implements ImageObserver, Runnable
 	public class PlanetRing
 	{
 	    double t;           // time for this ring (may be different from rest of chart)
+	    ChartSnapshot snapshot; // everything calculated at time 't'
 	    ChartPlanet[] planets;
 	    int rPlanetDots;    // where to draw dots for planets
 	    int rPlanetDots2;   // where to draw secondary dots for planets
@@ -172,8 +174,16 @@ public class ChartWheel extends Canvas implements ImageObserver, Runnable
 	    void refresh( double t )
 	    {
             this.t = t;
+            snapshot = new ChartSnapshot( ephemeris, t, curLat, curLng, zodiac, isHeliocentric() );
 	        for (int n=0; n < planets.length; n++)
-	            planets[n].refresh( t );
+	            planets[n].refresh( snapshot );
+	    }
+	    /**
+	     * Positions, angles, etc. at this ring's time.
+	     */
+	    public ChartSnapshot getSnapshot()
+	    {
+	        return snapshot;
 	    }
 	    void paint( Graphics gr )
 	    {
@@ -560,6 +570,25 @@ public class ChartWheel extends Canvas implements ImageObserver, Runnable
 			needCompose = true;
 		}
 	}
+	/**
+	 * The planets shown for the chart's own time and place.
+	 */
+	public PlanetRing getMainRing()
+	{
+	  return mainRing;
+	}
+	/**
+	 * Ephemeris used for all planetary positions in this chart.
+	 */
+	public Ephemeris getEphemeris()
+	{
+	  return ephemeris;
+	}
+	public void setEphemeris( Ephemeris ephemeris )
+	{
+	  this.ephemeris = ephemeris;
+	  refresh();
+	}
 	/**
 	 * Whether to display other bodies.
 	 */
@@ -673,19 +702,53 @@ public class ChartWheel extends Canvas implements ImageObserver, Runnable
     double geoLongitude( ChartPlanet planet, double t )
     {
         double lng;
-        if (planet.name.equals( "NorthNode" ))
+        if (planet.id == NORTHNODE)
             lng = ChartData.calculateMeanLunarNode( t );
-        else if (planet.name.equals( "SouthNode" ))
+        else if (planet.id == SOUTHNODE)
             lng = mod2pi( ChartData.calculateMeanLunarNode( t ) + Math.PI );
         else
-            lng = ChartData.geoLongitude( planet.name, t );
+            lng = ChartData.geoLongitude( ephemeris, planet.id, t );
         return makeZodiacAdjustment( lng );
     }
     public double helioLongitude( ChartPlanet planet, double t )
     {
-      double lng = ChartData.helioLongitude( planet.name, t );
+      double lng = ChartData.helioLongitude( ephemeris, planet.id, t );
       return makeZodiacAdjustment( lng );
     }
+    /**
+     * Geocentric longitudes for a series of times, as for geoLongitude().
+     */
+    void geoLongitudes( ChartPlanet planet, double[] t, double[] out )
+    {
+        if (planet.id == NORTHNODE  ||  planet.id == SOUTHNODE)
+        {
+            for (int n=0; n < t.length; n++)
+                out[n] = geoLongitude( planet, t[n] );
+            return;
+        }
+        ChartData.geoLongitudes( ephemeris, planet.id, t, out );
+        for (int n=0; n < t.length; n++)
+            out[n] = makeZodiacAdjustment( out[n] );
+    }
+    /**
+     * Heliocentric longitudes for a series of times, as for helioLongitude().
+     */
+    void helioLongitudes( ChartPlanet planet, double[] t, double[] out )
+    {
+        for (int n=0; n < t.length; n++)
+            out[n] = helioLongitude( planet, t[n] );
+    }
+    /**
+     * Longitudes for a series of times, heliocentric or geocentric according to the
+     * current chart setting.
+     */
+    void longitudes( ChartPlanet planet, double[] t, double[] out )
+    {
+        if (isHeliocentric())
+            helioLongitudes( planet, t, out );
+        else
+            geoLongitudes( planet, t, out );
+    }
 	
 
 	//////////////////////////////////////////////////////////////////////////
@@ -804,7 +867,7 @@ public class ChartWheel extends Canvas implements ImageObserver, Runnable
                 double dt;
                 double t0 = clickPlanet.ring.t;
                 double AC0 = calcAscendant( t0, curLng, curLat );
-                ChartData.OrbElems elems = ChartData.getOrbitalElements( clickPlanet.name, t0 );
+                ChartData.OrbElems elems = ChartData.getOrbitalElements( ephemeris, clickPlanet.id, t0 );
                 double dt_resolveFactor = -0.5;
                 if (elems != null  &&  elems.a > 4) // past Mars
                     dt = 0.01 * 36525;  // 1 year
@@ -1028,6 +1091,12 @@ public class ChartWheel extends Canvas implements ImageObserver, Runnable
     // find the time closest to the given time where the AC is at the given location
     double closestACTime( double t0, double AC )
     {
+        // solve for the sidereal time directly, where the AC rises at all - AC is in the
+        // selected zodiac (see calcAscendant()), so take it back to the tropical one first
+        double tropicalAC = ChartData.mod2pi( AC - ChartData.zodiacOffset( getJD(), zodiac ) );
+        double ramc = ChartData.calcRAMCForAscendant( tropicalAC, ChartData.calcOE( t0 ), curLat );
+        if (! Double.isNaN( ramc ))
+            return ChartData.calcTimeForRAMC( ramc, curLng, t0, false );
         for (int n=0; n < 9; n++)
         {
             double error = calcAscendant( t0, curLng, curLat ) - AC;
@@ -1347,7 +1416,7 @@ public class ChartWheel extends Canvas implements ImageObserver, Runnable
       int acSign = -1;
       if (isEnableChartRotation())
       {
-        double AC = calcAscendant( mainRing.t, curLng, curLat );
+        double AC = mainRing.snapshot.ascendant;
         acSign = (int)((AC/d2r)/30);
         double acDgrs = (AC/d2r)%30;
         Rectangle ACbounds = getSquareSignBounds( acSign );
@@ -1540,7 +1609,7 @@ public class ChartWheel extends Canvas implements ImageObserver, Runnable
         polarTriangle(gr, a, 2 * d2r, rOuter, rAngles);
         polarTriangle(gr, a + Math.PI, 2 * d2r, rOuter, rAngles);
         // midheaven
-        double mc = calcMidheaven(getJD(), curLng);
+        double mc = mainRing.snapshot.midheaven;
         gr.setColor(zenithColor);
         polarLine(gr, mc, rInner + wDgrs, mc, rAngles);
         polarLine(gr, mc + Math.PI, rInner + wDgrs, mc + Math.PI, rAngles);
@@ -1549,7 +1618,7 @@ public class ChartWheel extends Canvas implements ImageObserver, Runnable
         // house cusps
         if (enableHouseCusps)
         {
-          double cusps[] = ChartData.calcCusps(a, mc);
+          double cusps[] = mainRing.snapshot.cusps;
           gr.setColor(houseCuspColor);
           for (int nC = 0; nC < cusps.length; nC++)
             polarLine(gr, cusps[nC], rInner + wDgrs, cusps[nC], -rInner - wDgrs);
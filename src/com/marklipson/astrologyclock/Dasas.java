@@ -25,8 +25,18 @@ public class Dasas
   
   public Dasas( double birth_jd, int zodiac )
   {
-    double moon_radians = Ephemeris.getInstance().lookupLongitude( "Moon", birth_jd );
-    moon_radians = ChartData.makeZodiacAdjustment( birth_jd, moon_radians, zodiac );
+    double moon_radians = ChartData.geoLongitude( Ephemeris.MOON, birth_jd );
+    fromMoon( birth_jd, ChartData.makeZodiacAdjustment( birth_jd, moon_radians, zodiac ) );
+  }
+  /**
+   * Find periods from the moon's position in a birth chart.
+   */
+  public Dasas( ChartSnapshot birth )
+  {
+    fromMoon( birth.jd, birth.longitude( Ephemeris.MOON ) );
+  }
+  private void fromMoon( double birth_jd, double moon_radians )
+  {
     double asterism = moon_radians * 27 / (Math.PI*2);
     double aFrac = asterism - Math.floor( asterism );
     int nCycle = (int)Math.floor( asterism ) % cycle.length;
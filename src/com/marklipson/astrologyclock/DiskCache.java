@@ -0,0 +1,312 @@
+package com.marklipson.astrologyclock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rendered charts (PNG images) saved on disk, for Generator.
+ *
+ * Files are spread over subfolders named for the first two characters of their
+ * cache key, so that no one folder gets too big, with charts of the current time
+ * (see Options.isTransient()) under "transient":
+ *   cache/5d/5d8b33a50d110571c9e2a3914705219c.png
+ *   cache/transient/bf/bfae312a24b91f132b8d0df5911ae6b0.png
+ *
+ * The size and last use of every file are kept in memory, so that requests don't
+ * have to look at the files to see whether they are still good, and evict() can
+ * clear out old files without going through the folders.  Files expire as in
+ * RenderCache, and are kept for a while after that in case a fresh chart can't be
+ * drawn (see readStale()).  Beyond that the least recently used ones are deleted to
+ * keep the total size within a budget.
+ */
+public class DiskCache
+{
+  // how often to mark a file as used, as a fraction of how long it lasts; the time
+  // is kept on the file so that its age carries over when the server restarts
+  private static final int TOUCH_FRACTION = 10;
+
+  private static class Entry
+  {
+    final File file;
+    final long size;
+    final long ttl;
+    volatile long lastUsed;
+    volatile long lastTouched;
+    Entry( File file, long size, long ttl, long lastUsed )
+    {
+      this.file = file;
+      this.size = size;
+      this.ttl = ttl;
+      this.lastUsed = lastUsed;
+      this.lastTouched = lastUsed;
+    }
+  }
+
+  /**
+   * A file that evict() may delete, with the time it was last used when it was
+   * looked at.
+   */
+  private static class Candidate
+  {
+    final String key;
+    final Entry entry;
+    final long lastUsed;
+    Candidate( String key, Entry entry, long lastUsed )
+    {
+      this.key = key;
+      this.entry = entry;
+      this.lastUsed = lastUsed;
+    }
+  }
+
+  private final File folder, transientFolder;
+  private final long maxBytes;
+  // files, by cache key ("transient/" in front for charts of the current time)
+  private final ConcurrentHashMap<String,Entry> entries = new ConcurrentHashMap<String,Entry>();
+  private final AtomicLong bytes = new AtomicLong();
+
+  /**
+   * @param folder    where to keep the files
+   * @param maxBytes  total size of the files to keep
+   */
+  public DiskCache( File folder, long maxBytes )
+  {
+    this.folder = folder;
+    this.transientFolder = new File( folder, "transient" );
+    this.maxBytes = maxBytes;
+    transientFolder.mkdirs();
+  }
+
+  private static String indexKey( String key, boolean isTransient )
+  {
+    return isTransient ? "transient/" + key : key;
+  }
+  private File fileFor( String key, boolean isTransient )
+  {
+    String shard = key.substring( 0, Math.min( 2, key.length() ) );
+    return new File( new File( isTransient ? transientFolder : folder, shard ), key + ".png" );
+  }
+
+  /**
+   * Get a chart's image, or null if it isn't here or has expired.
+   */
+  public byte[] read( String key, boolean isTransient ) throws IOException
+  {
+    String k = indexKey( key, isTransient );
+    Entry entry = entries.get( k );
+    long now = System.currentTimeMillis();
+    if (entry == null)
+    {
+      // it may be from before the index was loaded (see scan())
+      File file = fileFor( key, isTransient );
+      long modified = file.lastModified();
+      if (modified == 0)
+        return null;
+      entry = add( k, new Entry( file, file.length(), ttl( isTransient ), modified ) );
+    }
+    if (now - entry.lastUsed > entry.ttl)
+      return null;
+    byte[] image;
+    try
+    {
+      image = readFile( entry.file );
+    }
+    catch( IOException x )
+    {
+      // deleted from under us
+      remove( k, entry );
+      return null;
+    }
+    entry.lastUsed = now;
+    if (now - entry.lastTouched > entry.ttl / TOUCH_FRACTION)
+    {
+      entry.lastTouched = now;
+      entry.file.setLastModified( now );
+    }
+    return image;
+  }
+
+  /**
+   * Get a chart's image even if it has expired, or null if it isn't here at all.
+   * This is for when a fresh one can't be drawn right now.
+   */
+  public byte[] readStale( String key, boolean isTransient )
+  {
+    Entry entry = entries.get( indexKey( key, isTransient ) );
+    File file = (entry == null) ? fileFor( key, isTransient ) : entry.file;
+    try
+    {
+      return file.exists() ? readFile( file ) : null;
+    }
+    catch( IOException x )
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Save a chart's image.  It is written under a temporary name and then renamed, so
+   * that nothing reading the cache sees it half written.
+   */
+  public void write( String key, boolean isTransient, byte[] image ) throws IOException
+  {
+    File file = fileFor( key, isTransient );
+    File shard = file.getParentFile();
+    if (! shard.exists())
+      shard.mkdirs();
+    File temp = File.createTempFile( file.getName(), ".tmp", shard );
+    try
+    {
+      FileOutputStream out = new FileOutputStream( temp );
+      try
+      {
+        out.write( image );
+      }
+      finally
+      {
+        out.close();
+      }
+      // renaming over an existing file fails on some systems
+      if (! temp.renameTo( file ))
+      {
+        file.delete();
+        if (! temp.renameTo( file ))
+          throw new IOException( "unable to save " + file );
+      }
+    }
+    finally
+    {
+      temp.delete();
+    }
+    add( indexKey( key, isTransient ), new Entry( file, image.length, ttl( isTransient ), System.currentTimeMillis() ) );
+  }
+
+  private static long ttl( boolean isTransient )
+  {
+    return isTransient ? RenderCache.TRANSIENT_TTL : RenderCache.PERMANENT_TTL;
+  }
+  private Entry add( String k, Entry entry )
+  {
+    Entry old = entries.put( k, entry );
+    bytes.addAndGet( entry.size - ((old == null) ? 0 : old.size) );
+    return entry;
+  }
+  private boolean remove( String k, Entry entry )
+  {
+    if (! entries.remove( k, entry ))
+      return false;
+    bytes.addAndGet( -entry.size );
+    return true;
+  }
+
+  /**
+   * Load the index from the files on disk.  This goes through all the folders, so
+   * it is done once, in the background, when the server starts.  Files left over
+   * from before the cache was split into subfolders are deleted.
+   */
+  public void scan()
+  {
+    scan( folder, false );
+    scan( transientFolder, true );
+  }
+  private void scan( File top, boolean isTransient )
+  {
+    File[] shards = top.listFiles();
+    if (shards == null)
+      return;
+    for (File shard : shards)
+    {
+      if (! shard.isDirectory())
+      {
+        if (shard.getName().endsWith( ".png" ))
+          shard.delete();
+        continue;
+      }
+      if (shard.equals( transientFolder ))
+        continue;
+      File[] files = shard.listFiles();
+      if (files == null)
+        continue;
+      for (File file : files)
+      {
+        String name = file.getName();
+        if (! name.endsWith( ".png" ))
+        {
+          // temporary file abandoned part way through write()
+          if (name.endsWith( ".tmp" )  &&  file.lastModified() < System.currentTimeMillis() - 3600000)
+            file.delete();
+          continue;
+        }
+        String k = indexKey( name.substring( 0, name.length() - 4 ), isTransient );
+        Entry entry = new Entry( file, file.length(), ttl( isTransient ), file.lastModified() );
+        // requests may have got there first
+        if (entries.putIfAbsent( k, entry ) == null)
+          bytes.addAndGet( entry.size );
+      }
+    }
+  }
+
+  /**
+   * Delete files that have been expired for a while (see RenderCache.STALE_FACTOR),
+   * and then the least recently used ones until the total size is within the budget.
+   */
+  public void evict()
+  {
+    long now = System.currentTimeMillis();
+    List<Candidate> kept = new ArrayList<Candidate>( entries.size() );
+    for (Map.Entry<String,Entry> e : entries.entrySet())
+    {
+      Entry entry = e.getValue();
+      long lastUsed = entry.lastUsed;
+      if (now - lastUsed > entry.ttl * RenderCache.STALE_FACTOR)
+      {
+        if (remove( e.getKey(), entry ))
+          entry.file.delete();
+      }
+      else
+        kept.add( new Candidate( e.getKey(), entry, lastUsed ) );
+    }
+    if (bytes.get() <= maxBytes)
+      return;
+    // sort on the times taken above - requests keep changing lastUsed, which would
+    // confuse the sort
+    Collections.sort( kept, new Comparator<Candidate>()
+    {
+      public int compare( Candidate a, Candidate b )
+      {
+        return (a.lastUsed < b.lastUsed) ? -1 : (a.lastUsed > b.lastUsed) ? 1 : 0;
+      }
+    } );
+    for (int n=0; n < kept.size()  &&  bytes.get() > maxBytes; n++)
+    {
+      Candidate c = kept.get( n );
+      if (remove( c.key, c.entry ))
+        c.entry.file.delete();
+    }
+  }
+
+  /**
+   * Read a whole file.
+   */
+  static byte[] readFile( File file ) throws IOException
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream( (int)file.length() );
+    Generator.copy( new FileInputStream( file ), out, true );
+    return out.toByteArray();
+  }
+
+  public String toString()
+  {
+    return "disk cache: " + entries.size() + " charts, " + bytes.get() / 1024 + " KB";
+  }
+}
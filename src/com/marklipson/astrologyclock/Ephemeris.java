@@ -1,12 +1,17 @@
 package com.marklipson.astrologyclock;
 
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 
 import com.marklipson.astrologyclock.ChartData.OrbElems;
 
@@ -15,115 +20,214 @@ import com.marklipson.astrologyclock.ChartData.OrbElems;
  * 
  * Data comes from JPL's Horizon system, and is processed by ProcessHorizonData.
  * 
+ * Tables are normally read from resources into the heap.  If the system property
+ * 'jastro.ephemeris.dir' names a directory containing the same .lng/.elem files,
+ * those files are instead mapped read-only and looked up in place, so that several
+ * JVMs on one machine share the same pages and startup does not have to parse them.
+ * 
  * @see com.marklipson.astrotools.ProcessHorizonData
  */
 public class Ephemeris
 {
+    // body handles - these match the planet numbers used by ChartWheel
+    public static final int SUN = 0;
+    public static final int MERCURY = 1;
+    public static final int VENUS = 2;
+    public static final int EARTH = 3;
+    public static final int MOON = 4;
+    public static final int MARS = 5;
+    public static final int JUPITER = 6;
+    public static final int SATURN = 7;
+    public static final int URANUS = 8;
+    public static final int NEPTUNE = 9;
+    public static final int PLUTO = 10;
+    public static final int CHIRON = 13;
+    public static final int CERES = 14;
+    public static final int SEDNA = 15;
+    public static final int NBODIES = 16;
+    // names for each handle (nodes are not ephemeris bodies, but hold their places)
+    private static final String[] bodyNames =
+      {
+        "sun", "mercury", "venus", "earth", "moon", "mars", "jupiter", "saturn",
+        "uranus", "neptune", "pluto", "northnode", "southnode", "chiron", "ceres", "sedna"
+      };
+
     // data is stored in memory
     private static class TableBase
     {
         String objectName;
         double t0, dt, t1;
-        TableBase nextTable;
+        boolean covers( double JD )
+        {
+            return JD >= t0  &&  JD < t1 - dt;
+        }
     }
     private static class PosTable extends TableBase
     {
         float[] data;
+        // samples of a mapped table are read directly from the file
+        FloatBuffer mapped;
+        int length()
+        {
+            return (data != null) ? data.length : mapped.limit();
+        }
+        float sample( int n )
+        {
+            return (data != null) ? data[n] : mapped.get( n );
+        }
     }
     private static class ElementTable extends TableBase
     {
-        List<OrbElems> elems = new ArrayList<OrbElems>();
+        // each field of the records is kept in its own array (see the ELEM_ constants)
+        double[] jd;
+        float[][] fields;
+        // records of a mapped table are read directly from the file
+        ByteBuffer mapped;
+        int length()
+        {
+            return (mapped != null) ? mapped.limit() / ELEM_RECORD_SIZE : jd.length;
+        }
+        double jd( int n )
+        {
+            return (mapped != null) ? mapped.getDouble( n * ELEM_RECORD_SIZE ) : jd[n];
+        }
+        float field( int field, int n )
+        {
+            if (mapped != null)
+                return mapped.getFloat( n * ELEM_RECORD_SIZE + 8 + field * 4 );
+            return fields[field][n];
+        }
     }
-    private Map<String,TableBase> planets = new HashMap<String,TableBase>();
-    private Map<String,TableBase> elements = new HashMap<String,TableBase>();
+    /**
+     * Chebyshev coefficients for consecutive intervals of length 'dt'.
+     */
+    private static class ChebTable extends TableBase
+    {
+        int nCoef;
+        float[] coef;
+        // coefficients of a mapped table are read directly from the file
+        FloatBuffer mapped;
+        float coef( int n )
+        {
+            return (coef != null) ? coef[n] : mapped.get( n );
+        }
+        int intervals()
+        {
+            // the last interval may be cut short
+            return (int)Math.ceil( (t1 - t0) / dt - 1e-6 );
+        }
+        boolean covers( double JD )
+        {
+            return JD >= t0  &&  JD < t1;
+        }
+    }
+    // kinds of table, and their file extensions
+    private static final int POS_TABLE = 0;
+    private static final int ELEM_TABLE = 1;
+    private static final int CHEB_TABLE = 2;
+    private static final String[] tableExtensions = { ".lng", ".elem", ".cheb" };
+    // sizes of the binary structures written by ProcessHorizonData
+    private static final int POS_HEADER_SIZE = 64;
+    private static final int ELEM_RECORD_SIZE = 36;
+    // fields of an orbital element record, after the JD
+    private static final int ELEM_A = 0;
+    private static final int ELEM_E = 1;
+    private static final int ELEM_PERI = 2;
+    private static final int ELEM_NODE = 3;
+    private static final int ELEM_INCL = 4;
+    private static final int ELEM_LNG = 5;
+    private static final int ELEM_DLNG = 6;
+    private static final int ELEM_FIELDS = 7;
+    // tables for each body in time order, one per span of time covered (tables from
+    // several files are merged into one where they join up)
+    private TableBase[][] planets = new TableBase[ NBODIES ][];
+    private TableBase[][] elements = new TableBase[ NBODIES ][];
+    // segment last found for each body on each thread, longitudes then elements,
+    // tried first on the next lookup since most lookups move steadily through time.
+    // Threads drawing charts or searching in parallel are each at their own time.
+    // Shared by all instances, as a hint from another one's tables only costs a
+    // binary search.
+    private static final ThreadLocal<int[]> lastSegment = new ThreadLocal<int[]>()
+    {
+        protected int[] initialValue()
+        {
+            return new int[ 2 * NBODIES ];
+        }
+    };
+    // when set, tables found in this folder are mapped rather than loaded
+    private File mapFolder;
 
-    // single instance
-    private static Ephemeris instance;
-    public static synchronized Ephemeris getInstance()
+    // single shared instance, created on first use by the class loader so that
+    // getInstance() does not need to lock
+    private static class Holder
+    {
+        static final Ephemeris instance = new Ephemeris( defaultMapFolder() );
+    }
+    public static Ephemeris getInstance()
     {
-        if (instance == null)
-            instance = new Ephemeris();
-        return instance;
+        return Holder.instance;
     }
-    private Ephemeris()
+    private static File defaultMapFolder()
+    {
+        String dir = System.getProperty( "jastro.ephemeris.dir" );
+        return (dir != null) ? new File( dir ) : null;
+    }
+    /**
+     * Load a separate set of tables.  Most callers should use getInstance(); this is
+     * for supplying a different instance to ChartData or ChartWheel.
+     * 
+     * @param mapFolder  folder of tables to map, or null to load from resources
+     */
+    public Ephemeris( File mapFolder )
     {
+        long t0 = System.nanoTime();
+        this.mapFolder = mapFolder;
         loadTables();
+        Startup.report( (mapFolder != null) ? "ephemeris (mapped)" : "ephemeris", t0 );
     }
     
     /**
      * Load one binary table into memory.
      */
-    private TableBase loadTable( String planetName, int index, boolean elemTable )
+    private TableBase loadTable( String planetName, int index, int kind )
     {
         String filename = planetName;
         if (index > 0)
             filename += index;
-        filename += elemTable ? ".elem" : ".lng";
+        filename += tableExtensions[ kind ];
         try
         {
-            Map<String, TableBase> tableSet = elemTable ? elements : planets;
-            InputStream inRaw = Ephemeris.class.getResourceAsStream( "resources/ephemeris/" + filename );
-            if (inRaw == null)
-              throw new IOException( "resource not found" );
-            DataInputStream in = new DataInputStream( inRaw );
-            TableBase table;
-            if (elemTable)
+            TableBase[][] tableSet = (kind == ELEM_TABLE) ? elements : planets;
+            int body = bodyId( planetName );
+            TableBase table = null;
+            if (mapFolder != null)
             {
-              // orbital elements - no header, just read orbital element entries
-              ElementTable eTable = new ElementTable();
-              table = eTable;
-              for (;;)
-              {
-                if (in.available() <= 0)
-                  break;
-                OrbElems oe = new OrbElems();
-                oe.refFrame = in.readDouble();
-                oe.a = in.readFloat();
-                oe.e = in.readFloat();
-                oe.peri = in.readFloat();
-                oe.node = in.readFloat();
-                oe.incl = in.readFloat();
-                oe.lng = in.readFloat();
-                oe.dLng = in.readFloat();
-                eTable.elems.add( oe );
-              }
-              // capture time range information
-              table.t0 = eTable.elems.get( 0 ).refFrame;
-              table.t1 = eTable.elems.get( eTable.elems.size()-1 ).refFrame;
-              if (eTable.elems.size() > 1)
-                table.dt = (table.t1 - table.t0) / (eTable.elems.size()-1);
-              table.objectName = planetName.toLowerCase();
+                File file = new File( mapFolder, filename );
+                if (file.exists())
+                    table = mapTable( planetName, mapFile( file ), kind );
             }
+            if (table == null)
+                table = readTable( planetName, filename, kind );
+            TableBase[] segments = tableSet[ body ];
+            if (index <= 1  ||  segments == null)
+                tableSet[ body ] = new TableBase[] { table };
             else
             {
-              // single value table
-              PosTable posTable = new PosTable();
-              table = posTable;
-              // load header
-              byte[] name = new byte[ 16 ];
-              in.readFully( name );
-              table.objectName = new String( name ).trim().toLowerCase();
-              table.t0 = in.readDouble();
-              table.dt = in.readDouble();
-              table.t1 = in.readDouble();
-              byte skip[] = new byte[ 24 ];
-              in.readFully( skip );
-              // load samples
-              int nSamples = (int)((table.t1 - table.t0 - table.dt/2) / table.dt);
-              posTable.data = new float[ nSamples ];
-              for (int n=0; n < nSamples; n++)
-                  posTable.data[n] = in.readFloat();
-            }
-            if (index <= 1)
-                tableSet.put( table.objectName, table );
-            else
-            {
-                // merge data with prior table
-                TableBase prevTable = tableSet.get( table.objectName );
-                while (prevTable.nextTable != null)
-                    prevTable = prevTable.nextTable;
+                // merge data with prior table, or add it as a separate segment
+                TableBase prevTable = segments[ segments.length-1 ];
                 if (! mergeTables( prevTable, table ))
-                    prevTable.nextTable = table;
+                {
+                    segments = Arrays.copyOf( segments, segments.length + 1 );
+                    segments[ segments.length-1 ] = table;
+                    Arrays.sort( segments, new Comparator<TableBase>()
+                    {
+                        public int compare( TableBase a, TableBase b )
+                        {
+                            return Double.compare( a.t0, b.t0 );
+                        }
+                    } );
+                    tableSet[ body ] = segments;
+                }
             }
             return table;
         }
@@ -134,111 +238,513 @@ public class Ephemeris
         }
     }
     /**
-     * Merge 'b' into 'a'.
+     * Read a table from resources into memory.
+     */
+    private TableBase readTable( String planetName, String filename, int kind ) throws IOException
+    {
+        InputStream inRaw = Ephemeris.class.getResourceAsStream( "resources/ephemeris/" + filename );
+        if (inRaw == null)
+          throw new IOException( "resource not found" );
+        DataInputStream in = new DataInputStream( inRaw );
+        TableBase table;
+        if (kind == ELEM_TABLE)
+        {
+          // orbital elements - no header, just read orbital element entries
+          ElementTable eTable = new ElementTable();
+          table = eTable;
+          List<byte[]> records = new ArrayList<byte[]>();
+          for (;;)
+          {
+            if (in.available() <= 0)
+              break;
+            byte[] record = new byte[ ELEM_RECORD_SIZE ];
+            in.readFully( record );
+            records.add( record );
+          }
+          int nRecords = records.size();
+          eTable.jd = new double[ nRecords ];
+          eTable.fields = new float[ ELEM_FIELDS ][ nRecords ];
+          for (int n=0; n < nRecords; n++)
+          {
+            ByteBuffer record = ByteBuffer.wrap( records.get( n ) );
+            eTable.jd[n] = record.getDouble();
+            for (int field=0; field < ELEM_FIELDS; field++)
+              eTable.fields[field][n] = record.getFloat();
+          }
+          // capture time range information
+          table.t0 = eTable.jd[ 0 ];
+          table.t1 = eTable.jd[ nRecords-1 ];
+          if (nRecords > 1)
+            table.dt = (table.t1 - table.t0) / (nRecords-1);
+          table.objectName = planetName.toLowerCase();
+        }
+        else
+        {
+          // single value table, or Chebyshev table - both have the same header
+          PosTable posTable = null;
+          ChebTable chebTable = null;
+          if (kind == CHEB_TABLE)
+              table = chebTable = new ChebTable();
+          else
+              table = posTable = new PosTable();
+          // load header
+          byte[] name = new byte[ 16 ];
+          in.readFully( name );
+          table.objectName = new String( name ).trim().toLowerCase();
+          table.t0 = in.readDouble();
+          table.dt = in.readDouble();
+          table.t1 = in.readDouble();
+          byte skip[] = new byte[ 24 ];
+          in.readFully( skip );
+          if (chebTable != null)
+          {
+              // load coefficients
+              chebTable.nCoef = ByteBuffer.wrap( skip ).getInt();
+              int nValues = chebTable.intervals() * chebTable.nCoef;
+              chebTable.coef = new float[ nValues ];
+              for (int n=0; n < nValues; n++)
+                  chebTable.coef[n] = in.readFloat();
+          }
+          else
+          {
+              // load samples
+              int nSamples = sampleCount( table );
+              posTable.data = new float[ nSamples ];
+              for (int n=0; n < nSamples; n++)
+                  posTable.data[n] = in.readFloat();
+          }
+        }
+        in.close();
+        return table;
+    }
+    /**
+     * Set up a table that refers directly to a mapped file.  The layout is the same as
+     * for readTable(), so only the header and time range need to be examined.
+     */
+    private TableBase mapTable( String planetName, ByteBuffer buf, int kind )
+    {
+        TableBase table;
+        if (kind == ELEM_TABLE)
+        {
+          ElementTable eTable = new ElementTable();
+          table = eTable;
+          int nRecords = buf.limit() / ELEM_RECORD_SIZE;
+          buf.limit( nRecords * ELEM_RECORD_SIZE );
+          eTable.mapped = buf;
+          table.t0 = buf.getDouble( 0 );
+          table.t1 = buf.getDouble( (nRecords-1) * ELEM_RECORD_SIZE );
+          if (nRecords > 1)
+            table.dt = (table.t1 - table.t0) / (nRecords-1);
+          table.objectName = planetName.toLowerCase();
+        }
+        else
+        {
+          PosTable posTable = null;
+          ChebTable chebTable = null;
+          if (kind == CHEB_TABLE)
+              table = chebTable = new ChebTable();
+          else
+              table = posTable = new PosTable();
+          byte[] name = new byte[ 16 ];
+          buf.get( name );
+          table.objectName = new String( name ).trim().toLowerCase();
+          table.t0 = buf.getDouble( 16 );
+          table.dt = buf.getDouble( 24 );
+          table.t1 = buf.getDouble( 32 );
+          buf.position( POS_HEADER_SIZE );
+          FloatBuffer values = buf.slice().asFloatBuffer();
+          if (chebTable != null)
+          {
+              chebTable.nCoef = buf.getInt( 40 );
+              values.limit( Math.min( chebTable.intervals() * chebTable.nCoef, values.capacity() ) );
+              chebTable.mapped = values;
+          }
+          else
+          {
+              int nSamples = sampleCount( table );
+              values.limit( Math.min( nSamples, values.capacity() ) );
+              posTable.mapped = values;
+          }
+        }
+        return table;
+    }
+    /**
+     * Number of samples in a single value table - t1 is the time of the last one.
+     */
+    private static int sampleCount( TableBase table )
+    {
+        return (int)Math.round( (table.t1 - table.t0) / table.dt ) + 1;
+    }
+    /**
+     * Map a file read-only.  The mapping remains valid after the file is closed.
+     */
+    private static ByteBuffer mapFile( File file ) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            return channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+    /**
+     * Merge 'b' into 'a', where 'b' starts within 'a' or right after it.
      * 
-     * Merge is only implemented for single value tables, not orbital elements.
+     * Merge is only implemented for tables in memory, not orbital elements or
+     * mapped tables, which stay as separate segments.
      */
-    private boolean mergeTables( TableBase a, TableBase b )
+    private static boolean mergeTables( TableBase a, TableBase b )
     {
         if (a.dt != b.dt)
             return false;
-        if (b.t0 > a.t1  ||  b.t0 < a.t0)
+        if (b.t0 > a.t1 + a.dt  ||  b.t0 < a.t0)
             return false;
-        double sampleOffset = (b.t0 - a.t1) / a.dt;
-        if (Math.abs( sampleOffset - Math.round( sampleOffset ) ) > a.dt/100000)
+        // offset of b's first value among a's
+        double sampleOffset = (b.t0 - a.t0) / a.dt;
+        if (Math.abs( sampleOffset - Math.round( sampleOffset ) ) > 1e-5)
             return false;
         int bStart = (int)Math.round( sampleOffset );
         if (a instanceof PosTable  &&  b instanceof PosTable)
         {
           PosTable A = (PosTable)a;
           PosTable B = (PosTable)b;
+          if (A.data == null  ||  B.data == null  ||  bStart > A.data.length)
+            return false;
+          // b's samples replace any of a's that they overlap
           float[] newData = new float[ bStart + B.data.length ];
-          System.arraycopy( newData, 0, A.data, 0, bStart );
-          System.arraycopy( newData, bStart, B.data, 0, B.data.length );
-          // Update the first table.
+          System.arraycopy( A.data, 0, newData, 0, bStart );
+          System.arraycopy( B.data, 0, newData, bStart, B.data.length );
           A.data = newData;
         }
+        else if (a instanceof ChebTable  &&  b instanceof ChebTable)
+        {
+          ChebTable A = (ChebTable)a;
+          ChebTable B = (ChebTable)b;
+          if (A.coef == null  ||  B.coef == null  ||  A.nCoef != B.nCoef  ||  bStart > A.intervals())
+            return false;
+          int nA = bStart * A.nCoef;
+          float[] newCoef = new float[ nA + B.coef.length ];
+          System.arraycopy( A.coef, 0, newCoef, 0, nA );
+          System.arraycopy( B.coef, 0, newCoef, nA, B.coef.length );
+          A.coef = newCoef;
+        }
+        else
+          return false;
         a.t1 = b.t1;
         return true;
     }
+    /**
+     * Load a longitude table, preferring the Chebyshev version if there is one.  A
+     * table in the map folder of either kind is used before the resources, so that
+     * it is mapped rather than read into memory.
+     */
+    private TableBase loadPositions( String planetName, int index )
+    {
+        String name = planetName + ((index > 0) ? String.valueOf( index ) : "");
+        int[] kinds = { CHEB_TABLE, POS_TABLE };
+        if (mapFolder != null)
+            for (int kind : kinds)
+                if (new File( mapFolder, name + tableExtensions[ kind ] ).exists())
+                    return loadTable( planetName, index, kind );
+        boolean haveCheb = Ephemeris.class.getResource( "resources/ephemeris/" + name + tableExtensions[ CHEB_TABLE ] ) != null;
+        return loadTable( planetName, index, haveCheb ? CHEB_TABLE : POS_TABLE );
+    }
     private void loadTables()
     {
-        loadTable( "sun", 0, false );
-        loadTable( "moon", 1, false );
-        loadTable( "moon", 2, false );
-        loadTable( "mercury", 0, false );
-        loadTable( "venus", 0, false );
-        loadTable( "mars", 0, false );
-        loadTable( "jupiter", 0, false );
-        loadTable( "saturn", 0, false );
-        loadTable( "uranus", 0, false );
-        loadTable( "neptune", 0, false );
-        loadTable( "pluto", 0, false );
-        loadTable( "chiron", 0, true );
-        loadTable( "ceres", 0, true );
-        loadTable( "sedna", 0, true );
+        loadPositions( "sun", 0 );
+        loadPositions( "moon", 1 );
+        loadPositions( "moon", 2 );
+        loadPositions( "mercury", 0 );
+        loadPositions( "venus", 0 );
+        loadPositions( "mars", 0 );
+        loadPositions( "jupiter", 0 );
+        loadPositions( "saturn", 0 );
+        loadPositions( "uranus", 0 );
+        loadPositions( "neptune", 0 );
+        loadPositions( "pluto", 0 );
+        loadTable( "chiron", 0, ELEM_TABLE );
+        loadTable( "ceres", 0, ELEM_TABLE );
+        loadTable( "sedna", 0, ELEM_TABLE );
 
-        loadTable( "pluto", 0, true );
-        loadTable( "neptune", 0, true );
-        loadTable( "uranus", 0, true );
-        loadTable( "saturn", 0, true );
-        loadTable( "earth", 0, true );
+        loadTable( "pluto", 0, ELEM_TABLE );
+        loadTable( "neptune", 0, ELEM_TABLE );
+        loadTable( "uranus", 0, ELEM_TABLE );
+        loadTable( "saturn", 0, ELEM_TABLE );
+        loadTable( "earth", 0, ELEM_TABLE );
     }
     
     /**
-     * Find the table for a given named object.
+     * Find the handle for a named body, or -1 if there isn't one.
      */
-    private PosTable findTable( String objectName )
+    public static int bodyId( String objectName )
     {
-        return (PosTable)planets.get( objectName.toLowerCase() );
+        for (int n=0; n < bodyNames.length; n++)
+            if (bodyNames[n].equalsIgnoreCase( objectName ))
+                return n;
+        return -1;
     }
+
     /**
-     * Find the orbital element table for a given named object.
+     * Do an orbital element lookup.
      */
-    private ElementTable findElementTable( String objectName )
+    public OrbElems lookupOrbElems( String objectName, double JD )
     {
-        return (ElementTable)elements.get( objectName.toLowerCase() );
+      return orbElems( bodyId( objectName ), JD );
     }
-
     /**
-     * Do an orbital element lookup.
+     * Do an orbital element lookup by body handle.  Returns null if there is no
+     * table covering the time.
      */
-    public OrbElems lookupOrbElems( String objectName, double JD )
+    public OrbElems orbElems( int body, double JD )
+    {
+      return orbElems( body, JD, new OrbElems() );
+    }
+    /**
+     * Do an orbital element lookup by body handle, interpolating between samples
+     * into 'oe'.  The elements are referred to time JD, so oe.position( JD ) gives
+     * the position at that time.  Returns 'oe', or null if there is no table
+     * covering the time.
+     */
+    public OrbElems orbElems( int body, double JD, OrbElems oe )
     {
       // get table for planet and verify time range
-      ElementTable table = findElementTable( objectName );
-      if (table == null)
+      if (body < 0  ||  body >= NBODIES)
           return null;
-      while (JD > table.t1  &&  table.nextTable != null)
-          table = (ElementTable)table.nextTable;
-      if (JD < table.t0  ||  JD >= table.t1 - table.dt)
+      ElementTable table = (ElementTable)findSegment( elements[ body ], NBODIES + body, JD );
+      if (table == null)
           return null;
-      // get the closest sample
-      int sample0 = (int)Math.floor( (JD - table.t0) / table.dt );
-      OrbElems oe = table.elems.get( sample0 );
-      // TODO interpolate between elements
+      // interpolate between the samples on either side
+      int n0 = (int)Math.floor( (JD - table.t0) / table.dt );
+      int n1 = n0 + 1;
+      double t0 = table.jd( n0 );
+      double t1 = table.jd( n1 );
+      double f = (JD - t0) / (t1 - t0);
+      oe.refFrame = JD;
+      oe.a = lerp( table.field( ELEM_A, n0 ), table.field( ELEM_A, n1 ), f );
+      oe.dLng = lerp( table.field( ELEM_DLNG, n0 ), table.field( ELEM_DLNG, n1 ), f );
+      // the perihelion is poorly defined for nearly circular orbits, and the node for
+      // nearly flat ones, so interpolate them as vectors: (e, perihelion) and
+      // (inclination, node)
+      {
+        double e0 = table.field( ELEM_E, n0 ), e1 = table.field( ELEM_E, n1 );
+        double p0 = table.field( ELEM_PERI, n0 ), p1 = table.field( ELEM_PERI, n1 );
+        double k = lerp( e0 * Math.cos( p0 ), e1 * Math.cos( p1 ), f );
+        double h = lerp( e0 * Math.sin( p0 ), e1 * Math.sin( p1 ), f );
+        oe.e = Math.sqrt( k*k + h*h );
+        oe.peri = ChartData.mod2pi( Math.atan2( h, k ) );
+      }
+      {
+        double i0 = table.field( ELEM_INCL, n0 ), i1 = table.field( ELEM_INCL, n1 );
+        double o0 = table.field( ELEM_NODE, n0 ), o1 = table.field( ELEM_NODE, n1 );
+        double q = lerp( i0 * Math.cos( o0 ), i1 * Math.cos( o1 ), f );
+        double p = lerp( i0 * Math.sin( o0 ), i1 * Math.sin( o1 ), f );
+        oe.incl = Math.sqrt( q*q + p*p );
+        oe.node = ChartData.mod2pi( Math.atan2( p, q ) );
+      }
+      // carry the mean longitude forward (or back) from each sample at its own rate,
+      // then blend
+      double lng0 = table.field( ELEM_LNG, n0 ) + table.field( ELEM_DLNG, n0 ) * (JD - t0) / 36525;
+      double lng1 = table.field( ELEM_LNG, n1 ) + table.field( ELEM_DLNG, n1 ) * (JD - t1) / 36525;
+      oe.lng = lerpAngle( lng0, lng1, f );
+      oe.dPeri = oe.dNode = oe.dIncl = 0;
       return oe;
     }
+    private static double lerp( double a, double b, double f )
+    {
+      return a + (b - a) * f;
+    }
+    /**
+     * Interpolate between two angles (radians) the short way around.
+     */
+    private static double lerpAngle( double a, double b, double f )
+    {
+      double d = b - a;
+      d -= Math.rint( d / (Math.PI*2) ) * (Math.PI*2);
+      return ChartData.mod2pi( a + d * f );
+    }
     /**
      * Do a longitude lookup.
      */
     public Double lookupLongitude( String objectName, double JD )
     {
-        // get table for planet and verify time range
-        PosTable table = findTable( objectName );
+        double lng = longitude( bodyId( objectName ), JD );
+        if (Double.isNaN( lng ))
+            return null;
+        return Double.valueOf( lng );
+    }
+    /**
+     * Do a longitude lookup by body handle.  Returns NaN if there is no table
+     * covering the time.
+     */
+    public double longitude( int body, double JD )
+    {
+        TableBase table = findPositions( body, JD );
         if (table == null)
+            return Double.NaN;
+        if (table instanceof ChebTable)
+            return chebyshev( (ChebTable)table, JD, false );
+        return interpolate( (PosTable)table, JD, false );
+    }
+    /**
+     * Look up longitudes for a series of times, setting out[n] to the longitude at
+     * jds[n], or to NaN where there is no table covering the time.  The table is
+     * found once per run of times that it covers, and the coefficients for an interval
+     * are reused while consecutive times fall within it, so times in order work best.
+     */
+    public void longitudes( int body, double[] jds, double[] out )
+    {
+        TableBase table = null;
+        int n = 0;
+        while (n < jds.length)
+        {
+            if (table == null  ||  ! table.covers( jds[n] ))
+                table = findPositions( body, jds[n] );
+            if (table == null)
+                out[n++] = Double.NaN;
+            else if (table instanceof ChebTable)
+                n = chebyshev( (ChebTable)table, jds, out, n );
+            else
+                n = interpolate( (PosTable)table, jds, out, n );
+        }
+    }
+    /**
+     * Rate of change of longitude, in radians per day.  Returns NaN if there is no
+     * table covering the time.
+     */
+    public double speed( int body, double JD )
+    {
+        TableBase table = findPositions( body, JD );
+        if (table == null)
+            return Double.NaN;
+        if (table instanceof ChebTable)
+            return chebyshev( (ChebTable)table, JD, true );
+        return interpolate( (PosTable)table, JD, true );
+    }
+    /**
+     * Find the longitude table covering a given time.
+     */
+    private TableBase findPositions( int body, double JD )
+    {
+        // get table for planet and verify time range
+        if (body < 0  ||  body >= NBODIES)
+            return null;
+        return findSegment( planets[ body ], body, JD );
+    }
+    /**
+     * Find the segment covering a given time, or null.
+     *
+     * @param slot  where the hint for these segments is kept (see lastSegment)
+     */
+    private static TableBase findSegment( TableBase[] segments, int slot, double JD )
+    {
+        if (segments == null)
             return null;
-        while (JD > table.t1  &&  table.nextTable != null)
-            table = (PosTable)table.nextTable;
-        if (JD < table.t0  ||  JD >= table.t1 - table.dt)
+        // try the last segment used first
+        int[] hints = lastSegment.get();
+        int hint = hints[ slot ];
+        if (hint < segments.length  &&  segments[ hint ].covers( JD ))
+            return segments[ hint ];
+        // binary search for the last segment starting at or before the time
+        if (JD < segments[0].t0)
             return null;
+        int lo = 0, hi = segments.length - 1;
+        while (lo < hi)
+        {
+            int mid = (lo + hi + 1) >>> 1;
+            if (segments[ mid ].t0 <= JD)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        if (! segments[ lo ].covers( JD ))
+            return null;
+        hints[ slot ] = lo;
+        return segments[ lo ];
+    }
+    /**
+     * Evaluate a Chebyshev series (or its derivative) with Clenshaw's recurrence.
+     */
+    private double chebyshev( ChebTable table, double JD, boolean derivative )
+    {
+        int interval = (int)((JD - table.t0) / table.dt);
+        double x = 2 * ((JD - table.t0) / table.dt - interval) - 1;
+        int base = interval * table.nCoef;
+        // b = value recurrence, d = its derivative with respect to x
+        double b1 = 0, b2 = 0;
+        double d1 = 0, d2 = 0;
+        for (int k=table.nCoef-1; k >= 1; k--)
+        {
+            double b = table.coef( base + k ) + 2 * x * b1 - b2;
+            double d = 2 * b1 + 2 * x * d1 - d2;
+            b2 = b1;
+            b1 = b;
+            d2 = d1;
+            d1 = d;
+        }
+        if (derivative)
+            return (b1 + x * d1 - d2) * (2 / table.dt) * (Math.PI/180);
+        double lng = table.coef( base ) + x * b1 - b2;
+        lng %= 360;
+        if (lng < 0)
+            lng += 360;
+        return lng * Math.PI/180;
+    }
+    /**
+     * Evaluate a Chebyshev table for the run of times starting at jds[start] that it
+     * covers.  Returns the index of the first time not covered.
+     */
+    private int chebyshev( ChebTable table, double[] jds, double[] out, int start )
+    {
+        int nCoef = table.nCoef;
+        double[] c = new double[ nCoef ];
+        int loaded = -1;
+        int n;
+        for (n=start; n < jds.length; n++)
+        {
+            double JD = jds[n];
+            if (! table.covers( JD ))
+                break;
+            double f = (JD - table.t0) / table.dt;
+            int interval = (int)f;
+            if (interval != loaded)
+            {
+                int base = interval * nCoef;
+                for (int k=0; k < nCoef; k++)
+                    c[k] = table.coef( base + k );
+                loaded = interval;
+            }
+            double x = 2 * (f - interval) - 1;
+            double b1 = 0, b2 = 0;
+            for (int k=nCoef-1; k >= 1; k--)
+            {
+                double b = c[k] + 2 * x * b1 - b2;
+                b2 = b1;
+                b1 = b;
+            }
+            double lng = c[0] + x * b1 - b2;
+            lng %= 360;
+            if (lng < 0)
+                lng += 360;
+            out[n] = lng * Math.PI/180;
+        }
+        return n;
+    }
+    /**
+     * Interpolate between samples (or find the rate of change).
+     */
+    private double interpolate( PosTable table, double JD, boolean derivative )
+    {
         // get the 3 closest samples
         int sample0 = (int)Math.floor( (JD - table.t0) / table.dt );
-        if (sample0 + 2 >= table.data.length)
-            return null;
-        float a = table.data[sample0];
-        float b = table.data[sample0+1];
-        float c = table.data[sample0+2];
+        if (sample0 + 2 >= table.length())
+            return Double.NaN;
+        float a = table.sample( sample0 );
+        float b = table.sample( sample0+1 );
+        float c = table.sample( sample0+2 );
         // make them linear
         if (b < a - 180)
             b += 360;
@@ -254,11 +760,117 @@ public class Ephemeris
         float B = b - a - A;
         // interpolate
         double i = (JD - table.t0) / table.dt - sample0;
+        if (derivative)
+            return (2*A*i + B) / table.dt * (Math.PI/180);
         double lng = A*i*i+B*i+C;
         if (lng < 0)
             lng += 360;
         if (lng > 360)
             lng -= 360;
-        return new Double( lng * Math.PI/180 );
+        return lng * Math.PI/180;
+    }
+    /**
+     * Interpolate between samples for the run of times starting at jds[start] that
+     * the table covers.  Returns the index of the first time not covered.
+     */
+    private int interpolate( PosTable table, double[] jds, double[] out, int start )
+    {
+        int loaded = -1;
+        float A = 0, B = 0, C = 0;
+        int n;
+        for (n=start; n < jds.length; n++)
+        {
+            double JD = jds[n];
+            if (! table.covers( JD ))
+                break;
+            int sample0 = (int)Math.floor( (JD - table.t0) / table.dt );
+            if (sample0 + 2 >= table.length())
+            {
+                out[n] = Double.NaN;
+                continue;
+            }
+            if (sample0 != loaded)
+            {
+                // same curve as interpolate() above
+                float a = table.sample( sample0 );
+                float b = table.sample( sample0+1 );
+                float c = table.sample( sample0+2 );
+                if (b < a - 180)
+                    b += 360;
+                if (b > a + 180)
+                    b -= 360;
+                if (c < b - 180)
+                    c += 360;
+                if (c > b + 180)
+                    c -= 360;
+                C = a;
+                A = (a-2*b+c)/2;
+                B = b - a - A;
+                loaded = sample0;
+            }
+            double i = (JD - table.t0) / table.dt - sample0;
+            double lng = A*i*i+B*i+C;
+            if (lng < 0)
+                lng += 360;
+            if (lng > 360)
+                lng -= 360;
+            out[n] = lng * Math.PI/180;
+        }
+        return n;
+    }
+
+    /**
+     * Check that tables split over several files merge correctly at the seam.  Run
+     * EphemTest to check lookups at the edges of the tables that are shipped.
+     */
+    public static void main( String[] args )
+    {
+        Ephemeris ephem = getInstance();
+        int failures = 0;
+        // a steadily moving body, in a table from JD 1000 with samples each day
+        double start = 1000, rate = 3.7;
+        // - split with an overlap, sharing the last sample, and right after it
+        double[] splits = { 1060, 1100, 1101 };
+        for (double split : splits)
+        {
+            PosTable a = testTable( start, 1100, rate );
+            PosTable b = testTable( split, 1200, rate );
+            if (! mergeTables( a, b ))
+            {
+                System.out.println( "merge at " + split + ": FAILED TO MERGE" );
+                failures ++;
+                continue;
+            }
+            double maxErr = 0;
+            for (double t=start; a.covers( t ); t += 0.125)
+            {
+                double expect = ((t - start) * rate) % 360;
+                double err = Math.abs( ephem.interpolate( a, t, false ) / (Math.PI/180) - expect );
+                maxErr = Math.max( maxErr, Math.min( err, 360 - err ) );
+            }
+            boolean ok = (maxErr < 1e-3)  &&  a.t1 == 1200  &&  a.data.length == sampleCount( a );
+            System.out.println( "merge at " + split + ": max error " + maxErr + (ok ? "" : "  FAILED") );
+            if (! ok)
+                failures ++;
+        }
+        // - tables with a gap between them stay separate
+        if (mergeTables( testTable( start, 1100, rate ), testTable( 1102, 1300, rate ) ))
+        {
+            System.out.println( "tables with a gap were merged  FAILED" );
+            failures ++;
+        }
+        System.out.println( (failures == 0) ? "OK" : (failures + " FAILED") );
+    }
+    private static PosTable testTable( double t0, double t1, double rate )
+    {
+        PosTable table = new PosTable();
+        table.objectName = "test";
+        table.t0 = t0;
+        table.dt = 1;
+        table.t1 = t1;
+        table.data = new float[ sampleCount( table ) ];
+        for (int n=0; n < table.data.length; n++)
+            table.data[n] = (float)(((t0 + n - 1000) * rate) % 360);
+        return table;
     }
 }
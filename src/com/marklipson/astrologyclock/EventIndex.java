@@ -0,0 +1,299 @@
+package com.marklipson.astrologyclock;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A catalog of astronomical events worked out in advance: sign ingresses, stations,
+ * exact aspects and lunar phases, for geocentric positions in the tropical zodiac.
+ *
+ * Events are kept in series, one for each kind of event and pair of bodies, sorted
+ * by time.  For instance:
+ *   next( STATION, Ephemeris.MARS, 0, t )                 next station of mars
+ *   find( INGRESS, Ephemeris.JUPITER, 0, t0, t1 )         jupiter's ingresses
+ *   find( ASPECT, Ephemeris.SUN, Ephemeris.MARS, t0, t1 ) exact sun-mars aspects
+ *
+ * The catalog is built by com.marklipson.astrotools.BuildEventIndex (see
+ * build-events.sh) and loaded from resources/events/events.bin.  Searches use it
+ * for ingresses and stations within the span it covers.
+ */
+public class EventIndex
+{
+    /**
+     * Kinds of events.  The value of each entry is:
+     *   INGRESS  the sign entered (0 = aries)
+     *   STATION  1 when the planet turns retrograde, 0 when it turns direct
+     *   ASPECT   the aspect, in degrees; 'body' is the lower of the two handles
+     *   PHASE    elongation of the moon from the sun, in degrees (0, 90, 180, 270)
+     * The ingresses and stations for each planet begin with an entry at the start of
+     * the catalog for the sign it is in and whether it is retrograde, so previous()
+     * gives them for any time covered.
+     */
+    public static final int INGRESS = 0;
+    public static final int STATION = 1;
+    public static final int ASPECT = 2;
+    public static final int PHASE = 3;
+
+    /**
+     * One event.
+     */
+    public static class Entry
+    {
+        public final int kind, body, other;
+        public final double t;
+        public final int value;
+        Entry( int kind, int body, int other, double t, int value )
+        {
+            this.kind = kind;
+            this.body = body;
+            this.other = other;
+            this.t = t;
+            this.value = value;
+        }
+        public String toString()
+        {
+            return kind + ":" + body + "/" + other + "@" + t + "=" + value;
+        }
+    }
+
+    /**
+     * The events of one kind for one body or pair of bodies, sorted by time.
+     */
+    private static class Series
+    {
+        final double[] times;
+        final short[] values;
+        Series( double[] times, short[] values )
+        {
+            this.times = times;
+            this.values = values;
+        }
+    }
+
+    private static class Holder
+    {
+        static final EventIndex instance = load();
+    }
+    /**
+     * Get the shared catalog, or null if there isn't one.
+     */
+    public static EventIndex getInstance()
+    {
+        return Holder.instance;
+    }
+
+    /**
+     * Identifies a catalog file, and its format version.
+     */
+    private final static int MAGIC = 0x4a455658;
+    private final static int VERSION = 1;
+
+    // span of time catalogued
+    private final double tFirst, tLast;
+    private final Map<Integer,Series> series;
+    // entries added while building
+    private Map<Integer,List<double[]>> adding;
+
+    /**
+     * Start an empty catalog, to be filled in with add() and written out with
+     * write().
+     */
+    public EventIndex( double tFirst, double tLast )
+    {
+        this.tFirst = tFirst;
+        this.tLast = tLast;
+        series = new HashMap<Integer,Series>();
+        adding = new TreeMap<Integer,List<double[]>>();
+    }
+    private EventIndex( double tFirst, double tLast, Map<Integer,Series> series )
+    {
+        this.tFirst = tFirst;
+        this.tLast = tLast;
+        this.series = series;
+    }
+
+    private static Integer key( int kind, int body, int other )
+    {
+        return (kind << 16) | ((body & 0xff) << 8) | (other & 0xff);
+    }
+
+    /**
+     * Add an event to a catalog being built.  Entries can be added in any order.
+     */
+    public void add( int kind, int body, int other, double t, int value )
+    {
+        Integer k = key( kind, body, other );
+        List<double[]> list = adding.get( k );
+        if (list == null)
+        {
+            list = new ArrayList<double[]>();
+            adding.put( k, list );
+        }
+        list.add( new double[] { t, value } );
+    }
+
+    /**
+     * Write a catalog that has been built with add().
+     */
+    public void write( OutputStream out0 ) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream( out0 );
+        out.writeInt( MAGIC );
+        out.writeInt( VERSION );
+        out.writeDouble( tFirst );
+        out.writeDouble( tLast );
+        out.writeInt( adding.size() );
+        for (Map.Entry<Integer,List<double[]>> entry : adding.entrySet())
+        {
+            double[][] events = entry.getValue().toArray( new double[0][] );
+            Arrays.sort( events, new Comparator<double[]>() {
+                public int compare( double[] a, double[] b )
+                {
+                    return Double.compare( a[0], b[0] );
+                }
+            } );
+            out.writeInt( entry.getKey() );
+            out.writeInt( events.length );
+            for (int n=0; n < events.length; n++)
+            {
+                out.writeDouble( events[n][0] );
+                out.writeShort( (int)events[n][1] );
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Load the catalog from resources, or return null if it isn't there or can't be
+     * read.
+     */
+    private static EventIndex load()
+    {
+        long t0 = System.nanoTime();
+        InputStream in0 = EventIndex.class.getResourceAsStream( "resources/events/events.bin" );
+        if (in0 == null)
+            return null;
+        try
+        {
+            DataInputStream in = new DataInputStream( new BufferedInputStream( in0, 65536 ) );
+            try
+            {
+                if (in.readInt() != MAGIC  ||  in.readInt() != VERSION)
+                    throw new IOException( "not an event catalog, or an old version" );
+                double tFirst = in.readDouble();
+                double tLast = in.readDouble();
+                int nSeries = in.readInt();
+                Map<Integer,Series> series = new HashMap<Integer,Series>( nSeries * 4 / 3 + 1 );
+                for (int n=0; n < nSeries; n++)
+                {
+                    Integer k = in.readInt();
+                    int count = in.readInt();
+                    double[] times = new double[ count ];
+                    short[] values = new short[ count ];
+                    for (int i=0; i < count; i++)
+                    {
+                        times[i] = in.readDouble();
+                        values[i] = in.readShort();
+                    }
+                    series.put( k, new Series( times, values ) );
+                }
+                Startup.report( "event index", t0 );
+                return new EventIndex( tFirst, tLast, series );
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch( IOException x )
+        {
+            System.err.println( "unable to load event index: " + x.getMessage() );
+            return null;
+        }
+    }
+
+    /**
+     * Whether the catalog covers the span of time from t1 to t2.
+     */
+    public boolean covers( double t1, double t2 )
+    {
+        return t1 >= tFirst  &&  t2 <= tLast;
+    }
+    /**
+     * Whether there are any events of the given kind for the given bodies.
+     */
+    public boolean has( int kind, int body, int other )
+    {
+        return series.containsKey( key( kind, body, other ) );
+    }
+
+    /**
+     * Find the events of a kind, for a body or pair of bodies (0 for 'other' where
+     * there is only one), from tFrom up to but not including tTo.
+     */
+    public List<Entry> find( int kind, int body, int other, double tFrom, double tTo )
+    {
+        List<Entry> found = new ArrayList<Entry>();
+        Series s = series.get( key( kind, body, other ) );
+        if (s == null)
+            return found;
+        for (int n=indexOf( s, tFrom ); n < s.times.length  &&  s.times[n] < tTo; n++)
+            found.add( new Entry( kind, body, other, s.times[n], s.values[n] ) );
+        return found;
+    }
+    /**
+     * Find the first event after time t, or return null if there isn't one.
+     */
+    public Entry next( int kind, int body, int other, double t )
+    {
+        Series s = series.get( key( kind, body, other ) );
+        if (s == null)
+            return null;
+        int n = indexOf( s, t );
+        while (n < s.times.length  &&  s.times[n] <= t)
+            n ++;
+        if (n == s.times.length)
+            return null;
+        return new Entry( kind, body, other, s.times[n], s.values[n] );
+    }
+    /**
+     * Find the last event at or before time t, or return null if there isn't one.
+     */
+    public Entry previous( int kind, int body, int other, double t )
+    {
+        Series s = series.get( key( kind, body, other ) );
+        if (s == null)
+            return null;
+        int n = indexOf( s, t );
+        while (n < s.times.length  &&  s.times[n] <= t)
+            n ++;
+        n --;
+        if (n < 0)
+            return null;
+        return new Entry( kind, body, other, s.times[n], s.values[n] );
+    }
+    /**
+     * Index of the first event at or after time t.
+     */
+    private static int indexOf( Series s, double t )
+    {
+        int n = Arrays.binarySearch( s.times, t );
+        if (n < 0)
+            return -n - 1;
+        // step back to the first of any equal times
+        while (n > 0  &&  s.times[n-1] == t)
+            n --;
+        return n;
+    }
+}
@@ -1,8 +1,8 @@
 package com.marklipson.astrologyclock;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -10,12 +10,29 @@ import java.math.BigInteger;
 import java.net.URL;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.imageio.ImageIO;
 import javax.servlet.ServletException;
@@ -31,11 +48,101 @@ import javax.servlet.http.HttpServletResponse;
  * 
  * ARGUMENTS:
  *   see webapp/index.jsp for full details
+ *   stats=1 reports on the caches and the render queue, as text
  */
 public class Generator extends HttpServlet
 {
   private static final long serialVersionUID = 1L;
-  private static SimpleDateFormat http_date_fmt = new SimpleDateFormat( "EEE, d MMM yyyy HH:mm:ss Z" );
+  /**
+   * Default size of the in-memory cache of charts, in bytes (see the "memcache"
+   * parameter).
+   */
+  private static final long DEFAULT_MEMCACHE = 32*1024*1024;
+  // popular charts, in front of the disk cache
+  private RenderCache memCache;
+  // charts being drawn, by cache key, so each is only drawn once at a time
+  private final ConcurrentHashMap<String,Render> loading = new ConcurrentHashMap<String,Render>();
+  /**
+   * Default size of the disk cache, in bytes (see the "diskcache" parameter).
+   */
+  private static final long DEFAULT_DISKCACHE = 512L*1024*1024;
+  // how often to clear old charts out of the caches, ms
+  private static final long EVICT_INTERVAL = 60*1000;
+  // where charts are saved
+  private DiskCache diskCache;
+  // evicts charts, and draws live charts ahead of time
+  private ScheduledExecutorService background;
+
+  /**
+   * Charts are drawn by a pool of threads, one per processor by default, with a
+   * limited number waiting their turn (see the "render-threads" and "render-queue"
+   * parameters).  When the queue is full, requests are turned away with a 503 and a
+   * Retry-After of this many seconds, unless there is an old copy of the chart.
+   */
+  private static final int RETRY_AFTER = 5;
+  private ThreadPoolExecutor renderPool;
+  /**
+   * A chart waiting for or being drawn by the render pool.
+   */
+  private class Render extends FutureTask<byte[]>
+  {
+    final String cacheKey;
+    final long queued = System.nanoTime();
+    Render( String cacheKey, Callable<byte[]> render )
+    {
+      super( render );
+      this.cacheKey = cacheKey;
+    }
+    protected void done()
+    {
+      // by now it is in the memory cache, or is not going to be
+      loading.remove( cacheKey, this );
+    }
+  }
+  // how long renders wait in the queue, and how many are turned away
+  private final AtomicLong renders = new AtomicLong(), totalWait = new AtomicLong(), maxWait = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong(), stale = new AtomicLong();
+  /**
+   * Thrown when a chart can't be drawn because the render queue is full.
+   */
+  private static class OverloadedException extends IOException
+  {
+    private static final long serialVersionUID = 1L;
+    OverloadedException()
+    {
+      super( "too many charts waiting to be drawn" );
+    }
+  }
+
+  /**
+   * Charts of the current time ("live" charts) are drawn for the start of the
+   * quantum of time the request comes in, so that everyone asking for the same one
+   * shares it.  Defaults, in seconds and charts (see the "live-quantum" and
+   * "prerender" parameters).
+   */
+  private static final int DEFAULT_LIVE_QUANTUM = 60;
+  private static final int DEFAULT_PRERENDER = 20;
+  // how long before the start of a quantum to draw its most popular charts, ms
+  private static final long PRERENDER_LEAD = 5000;
+  // the most live charts counted in one quantum
+  private static final int MAX_LIVE_CHARTS = 1000;
+  private long liveQuantum;
+  private int prerenderCount;
+  /**
+   * The options for a live chart, and how often it has been asked for during the
+   * current quantum.
+   */
+  private static class LiveChart
+  {
+    final Options opts;
+    final AtomicInteger hits = new AtomicInteger();
+    LiveChart( Options opts )
+    {
+      this.opts = opts;
+    }
+  }
+  // live charts asked for during the current quantum, by their options
+  private final ConcurrentHashMap<String,LiveChart> liveCharts = new ConcurrentHashMap<String,LiveChart>();
 
   static class Options
   {
@@ -53,6 +160,33 @@ public class Generator extends HttpServlet
     List<String> hideBodies = new ArrayList<String>();
     List<String> showBodies = new ArrayList<String>();
     Date t2;
+    // times are the current time, rounded down (see Generator.liveQuantum)
+    boolean live, liveT2;
+
+    /**
+     * Copy the options for a live chart, with the current time changed to t.
+     */
+    Options copyAt( long t )
+    {
+      Options copy = new Options();
+      copy.time = live ? new Date( t ) : time;
+      copy.lat = lat;
+      copy.lng = lng;
+      copy.caption = caption;
+      copy.diameter = diameter;
+      copy.showHouses = showHouses;
+      copy.square = square;
+      copy.helio = helio;
+      copy.stars = stars;
+      copy.zodiac = zodiac;
+      copy.hideAll = hideAll;
+      copy.hideBodies = hideBodies;
+      copy.showBodies = showBodies;
+      copy.t2 = liveT2 ? new Date( t ) : t2;
+      copy.live = live;
+      copy.liveT2 = liveT2;
+      return copy;
+    }
     
     String generateCacheKey()
     {
@@ -95,6 +229,8 @@ public class Generator extends HttpServlet
      */
     boolean isTransient()
     {
+      if (live  ||  liveT2)
+        return true;
       if (Math.abs( System.currentTimeMillis() - time.getTime() ) < 1000)
         return true;
      if (t2 != null  &&  Math.abs( System.currentTimeMillis() - t2.getTime() ) < 1000)
@@ -129,13 +265,19 @@ public class Generator extends HttpServlet
             throw new IOException( "No image writer found for PNG" );
     }
     
+    /**
+     * Whether a time parameter asks for the current time: null, blank or 0.
+     */
+    static private boolean isNow( String pT )
+    {
+      return pT == null  ||  pT.equals( "" )  ||  pT.equals( "0" );
+    }
     /**
      * Parse time/date and zone parameters.  Returns millitime.
      */
     static private long parseDateAndZone( String pT, String pZ )
     {
-      // null or 0 returns current time
-      if (pT ==  null  ||  pT.equals( "" )  ||  pT.equals( "0" ))
+      if (isNow( pT ))
         return System.currentTimeMillis();
       // specify unix time (seconds past 1970)
       if (pT.matches( "^\\-?\\d+$" ))
@@ -180,12 +322,222 @@ public class Generator extends HttpServlet
       return cal.getTimeInMillis();
     }
 
+    /**
+     * Load the ephemeris while the server is starting, rather than on the first request,
+     * set up the caches, and start clearing them out and drawing popular live charts
+     * ahead of time in the background.
+     */
+    public void init() throws ServletException
+    {
+        Startup.preload( false );
+        String pMemCache = getServletConfig().getInitParameter( "memcache" );
+        memCache = new RenderCache( (pMemCache == null) ? DEFAULT_MEMCACHE : Long.parseLong( pMemCache ) );
+        // find cache folder
+        File appFolder;
+        {
+          String configDir = getServletConfig().getInitParameter( "appdir" );
+          if (configDir == null)
+          {
+            appFolder = new File( new File( System.getProperty( "user.home" ) ), "chart-generator" );
+            if (! appFolder.exists())
+              appFolder = new File( "/home/marklipson/chart-generator/" );
+          }
+          else
+            appFolder = new File( configDir );
+        }
+        String pDiskCache = getServletConfig().getInitParameter( "diskcache" );
+        diskCache = new DiskCache( new File( appFolder, "cache" ), (pDiskCache == null) ? DEFAULT_DISKCACHE : Long.parseLong( pDiskCache ) );
+        // live charts
+        String pQuantum = getServletConfig().getInitParameter( "live-quantum" );
+        liveQuantum = 1000L * ((pQuantum == null) ? DEFAULT_LIVE_QUANTUM : Integer.parseInt( pQuantum ));
+        // cache keys only go down to the minute
+        liveQuantum = Math.max( liveQuantum, 60000 );
+        String pPrerender = getServletConfig().getInitParameter( "prerender" );
+        prerenderCount = (pPrerender == null) ? DEFAULT_PRERENDER : Integer.parseInt( pPrerender );
+        // render pool, which the background work also uses
+        String pThreads = getServletConfig().getInitParameter( "render-threads" );
+        int nThreads = (pThreads == null) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt( pThreads );
+        String pQueue = getServletConfig().getInitParameter( "render-queue" );
+        int queueSize = (pQueue == null) ? nThreads * 4 : Integer.parseInt( pQueue );
+        // with no queue, charts are only drawn when a thread is free to take them
+        BlockingQueue<Runnable> queue;
+        if (queueSize > 0)
+          queue = new ArrayBlockingQueue<Runnable>( queueSize );
+        else
+          queue = new SynchronousQueue<Runnable>();
+        renderPool = new ThreadPoolExecutor( nThreads, nThreads, 0, TimeUnit.MILLISECONDS, queue, new ThreadFactory()
+        {
+          private int count;
+          public synchronized Thread newThread( Runnable r )
+          {
+            Thread thread = new Thread( r, "chart render " + ++count );
+            thread.setDaemon( true );
+            return thread;
+          }
+        } )
+        {
+          protected void beforeExecute( Thread t, Runnable r )
+          {
+            if (r instanceof Render)
+            {
+              long wait = System.nanoTime() - ((Render)r).queued;
+              renders.incrementAndGet();
+              totalWait.addAndGet( wait );
+              for (long max = maxWait.get(); wait > max  &&  ! maxWait.compareAndSet( max, wait ); max = maxWait.get())
+                ;
+            }
+          }
+        };
+        background = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+        {
+          public Thread newThread( Runnable r )
+          {
+            Thread thread = new Thread( r, "chart generator background" );
+            thread.setDaemon( true );
+            thread.setPriority( Thread.MIN_PRIORITY );
+            return thread;
+          }
+        } );
+        // the disk cache's index has to be loaded before anything can be evicted
+        background.execute( new Runnable()
+        {
+          public void run()
+          {
+            diskCache.scan();
+            log( diskCache.toString() );
+          }
+        } );
+        background.scheduleWithFixedDelay( new Runnable()
+        {
+          public void run()
+          {
+            try
+            {
+              diskCache.evict();
+              memCache.purge();
+            }
+            catch( Throwable x )
+            {
+              log( "unable to clear out the chart caches", x );
+            }
+          }
+        }, EVICT_INTERVAL, EVICT_INTERVAL, TimeUnit.MILLISECONDS );
+        if (prerenderCount > 0)
+          schedulePrerender();
+    }
+    public void destroy()
+    {
+        if (background != null)
+          background.shutdownNow();
+        if (renderPool != null)
+        {
+          // requests waiting for charts that will now never be drawn are turned away
+          for (Runnable r : renderPool.shutdownNow())
+            if (r instanceof Render)
+              ((Render)r).cancel( false );
+        }
+        super.destroy();
+    }
+
+    /**
+     * Report on the caches and the render pool.
+     */
+    private String getStats()
+    {
+      long n = renders.get();
+      return memCache + "\n" +
+        diskCache + "\n" +
+        "render pool: " + renderPool.getActiveCount() + " drawing, " + renderPool.getQueue().size() + " queued (of " + (renderPool.getQueue().size() + renderPool.getQueue().remainingCapacity()) + "), " +
+        n + " drawn, wait " + ((n == 0) ? 0 : totalWait.get() / n / 1000000) + " ms average, " + maxWait.get() / 1000000 + " ms most, " +
+        rejected.get() + " turned away, " + stale.get() + " served stale\n";
+    }
+
+    /**
+     * Count a request for a live chart, so that the popular ones can be drawn ahead
+     * of time.
+     */
+    private void countLiveChart( Options opts )
+    {
+      String key = opts.copyAt( 0 ).generateCacheKey();
+      LiveChart chart = liveCharts.get( key );
+      if (chart == null)
+      {
+        if (liveCharts.size() >= MAX_LIVE_CHARTS)
+          return;
+        chart = new LiveChart( opts );
+        LiveChart existing = liveCharts.putIfAbsent( key, chart );
+        if (existing != null)
+          chart = existing;
+      }
+      chart.hits.incrementAndGet();
+    }
+    /**
+     * Draw the most popular live charts for the next quantum shortly before it
+     * begins, then do it again for the one after.  The charts are handed to the
+     * render pool, so this doesn't hold up the other background work.
+     */
+    private void schedulePrerender()
+    {
+      long now = System.currentTimeMillis();
+      long next = now - now % liveQuantum + liveQuantum;
+      long delay = Math.max( next - Math.min( PRERENDER_LEAD, liveQuantum / 4 ) - now, 0 );
+      background.schedule( new Runnable()
+      {
+        public void run()
+        {
+          try
+          {
+            prerender();
+          }
+          catch( Throwable x )
+          {
+            log( "unable to prerender live charts", x );
+          }
+          schedulePrerender();
+        }
+      }, delay, TimeUnit.MILLISECONDS );
+    }
+    private void prerender()
+    {
+      // start counting again for the next quantum
+      List<LiveChart> popular = new ArrayList<LiveChart>( liveCharts.values() );
+      liveCharts.clear();
+      Collections.sort( popular, new Comparator<LiveChart>()
+      {
+        public int compare( LiveChart a, LiveChart b )
+        {
+          return b.hits.get() - a.hits.get();
+        }
+      } );
+      long now = System.currentTimeMillis();
+      long next = now - now % liveQuantum + liveQuantum;
+      for (int n=0; n < popular.size()  &&  n < prerenderCount; n++)
+      {
+        // a chart that was only asked for once isn't popular
+        if (popular.get( n ).hits.get() < 2)
+          break;
+        Options opts = popular.get( n ).opts.copyAt( next );
+        String cacheKey = opts.generateCacheKey();
+        // queue them all at once, to be drawn by as many threads as are free, without
+        // waiting here - requests come first, though, so stop once the queue is full
+        if (memCache.get( cacheKey ) == null  &&  render( opts, cacheKey, true ).isCancelled())
+          break;
+      }
+    }
+
     /**
      * Process image generation requests.
      */
     protected void doGet(HttpServletRequest rqst, HttpServletResponse resp)
             throws ServletException, IOException
     {
+        if ("1".equals( rqst.getParameter( "stats" ) ))
+        {
+          resp.setContentType( "text/plain" );
+          resp.setHeader( "Cache-Control", "no-cache" );
+          resp.getOutputStream().write( getStats().getBytes() );
+          return;
+        }
         // get arguments
         String pDiam = rqst.getParameter( "d" );
         String pT = rqst.getParameter( "t" );
@@ -224,8 +576,15 @@ public class Generator extends HttpServlet
           else if (pZodiac.matches( "\\d+" ))
             opts.zodiac = Integer.parseInt( pZodiac );
         }
+        // charts of the current time are shared by everyone asking for them during
+        // the same quantum of time
+        long now = System.currentTimeMillis();
+        long liveTime = now - now % liveQuantum;
         if (pT2 != null)
-          opts.t2 = new Date( parseDateAndZone( pT2, pZ2 ) );
+        {
+          opts.liveT2 = isNow( pT2 );
+          opts.t2 = new Date( opts.liveT2 ? liveTime : parseDateAndZone( pT2, pZ2 ) );
+        }
         opts.showHouses = ! "0".equals( pHouses );
         opts.stars = "1".equals( pStars );
         opts.square = "1".equals( pSquare );
@@ -249,87 +608,156 @@ public class Generator extends HttpServlet
           for (String b : toShow)
             opts.showBodies.add( b );
         }
-        opts.time = new Date( parseDateAndZone( pT, pZ ) );
+        opts.live = isNow( pT );
+        opts.time = new Date( opts.live ? liveTime : parseDateAndZone( pT, pZ ) );
         if (pLat != null)
           opts.lat = Double.parseDouble( pLat );
         if (pLng != null)
           opts.lng = Double.parseDouble( pLng );
         // detect transient chart (i.e. if it is based on current time)
         boolean isTransient = opts.isTransient();
+        if (opts.live  ||  opts.liveT2)
+          countLiveChart( opts );
         // get cache filename
-        File appFolder;
+        String cacheKey = opts.generateCacheKey();
+        // - expiration time for caching; live charts change at the end of the quantum
+        long expires = now + 3*86400*1000;
+        if (opts.live  ||  opts.liveT2)
+          expires = liveTime + liveQuantum;
+        else if (isTransient)
+          expires = now + 60*1000;
+        // generate image or display from cache - memory first, then disk
+        byte[] image = memCache.get( cacheKey );
+        if (image == null)
         {
-          String configDir = getServletConfig().getInitParameter( "appdir" );
-          if (configDir == null)
+          try
           {
-            appFolder = new File( new File( System.getProperty( "user.home" ) ), "chart-generator" );
-            if (! appFolder.exists())
-              appFolder = new File( "/home/marklipson/chart-generator/" );
+            image = load( opts, cacheKey, isTransient );
+          }
+          catch( OverloadedException x )
+          {
+            // too busy - fall back to an old copy, briefly, or ask for the request to
+            // be repeated later
+            image = findStale( opts, cacheKey, isTransient, liveTime );
+            if (image == null)
+            {
+              rejected.incrementAndGet();
+              resp.setIntHeader( "Retry-After", RETRY_AFTER );
+              resp.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE, x.getMessage() );
+              return;
+            }
+            stale.incrementAndGet();
+            expires = now + RETRY_AFTER*1000;
           }
-          else
-            appFolder = new File( configDir );
-        }
-        File cacheFolder = new File( appFolder, "cache" );
-        File transientFolder = new File( cacheFolder, "transient" );
-        if (! transientFolder.exists())
-          transientFolder.mkdirs();
-        File cacheFile = new File( isTransient ? transientFolder : cacheFolder, opts.generateCacheKey() + ".png" );
-        // purge old files from cache, occasionally
-        File purgeMarker = new File( cacheFolder, "last-purge" );
-        if (! purgeMarker.exists())
-        {
-          FileOutputStream out = new FileOutputStream( purgeMarker );
-          out.write( "\n".getBytes() );
-          out.close();
-        }
-        if (System.currentTimeMillis() - purgeMarker.lastModified() > 15*60*1000)
-        {
-          purgeMarker.setLastModified( System.currentTimeMillis() );
-          purgeOldFiles( cacheFolder, 3*86400*1000 );
-          purgeOldFiles( transientFolder, 3*60*1000 );
         }
         // set output headers
         // - image content
         resp.setHeader( "Content-type", "image/png" );
-        // - expiration time for caching
-        long expiresIn = 3*86400*1000;
-        if (isTransient)
-          expiresIn = 60*1000;
-        resp.setHeader( "Date", http_date_fmt.format( new Date() ) );
-        resp.setHeader( "Expires", http_date_fmt.format( new Date( System.currentTimeMillis() + expiresIn ) ) );
-        // generate image or display from cache
-        long cacheTime = isTransient ? 3*60*1000 : 3*86400*1000;
-        if (cacheFile.exists()  &&  cacheFile.lastModified() > System.currentTimeMillis() - cacheTime)
-        {
-          copy( cacheFile, resp.getOutputStream() );
-          cacheFile.setLastModified( System.currentTimeMillis() );
-        }
-        else
-        {
-          FileOutputStream saveToCache = new FileOutputStream( cacheFile );
-          generate( opts, saveToCache );
-          copy( cacheFile, resp.getOutputStream() );
-        }
+        resp.setDateHeader( "Date", now );
+        resp.setDateHeader( "Expires", expires );
+        resp.setHeader( "Cache-Control", "public, max-age=" + (expires - now) / 1000 );
+        resp.setContentLength( image.length );
+        resp.getOutputStream().write( image );
         /*
           // just generate it
           generate( opts, resp.getOutputStream() );
         */
     }
     /**
-     * Delete files older than a certain age.
+     * Find an old copy of a chart, for when a fresh one can't be drawn: one that has
+     * expired, or for a live chart, the one for the quantum before.  Returns null if
+     * there isn't one.
      */
-    private static void purgeOldFiles( File folder, int maxAge )
+    private byte[] findStale( Options opts, String cacheKey, boolean isTransient, long liveTime )
     {
-      long cutoff = System.currentTimeMillis() - maxAge;
-      for (File f : folder.listFiles())
+      byte[] image = memCache.getStale( cacheKey );
+      if (image == null)
+        image = diskCache.readStale( cacheKey, isTransient );
+      if (image == null  &&  (opts.live  ||  opts.liveT2))
       {
-        if (f.isDirectory())
-          continue;
-        if (f.lastModified() < cutoff)
-          f.delete();
+        String prevKey = opts.copyAt( liveTime - liveQuantum ).generateCacheKey();
+        image = memCache.getStale( prevKey );
+        if (image == null)
+          image = diskCache.readStale( prevKey, true );
       }
+      return image;
+    }
+    /**
+     * Get a chart that is not in the memory cache from the disk cache, or render it,
+     * and keep it in memory.  Charts are drawn by the render pool.  Requests for the
+     * same chart that come in while it is being drawn wait for it, rather than each
+     * drawing it again.
+     *
+     * @throws OverloadedException  if the render pool's queue is full
+     */
+    private byte[] load( final Options opts, final String cacheKey, final boolean isTransient ) throws IOException
+    {
+      byte[] image = diskCache.read( cacheKey, isTransient );
+      if (image != null)
+      {
+        memCache.put( cacheKey, image, isTransient );
+        return image;
+      }
+      Render running = render( opts, cacheKey, isTransient );
+      try
+      {
+        return running.get();
+      }
+      catch( CancellationException x )
+      {
+        throw new OverloadedException();
+      }
+      catch( InterruptedException x )
+      {
+        Thread.currentThread().interrupt();
+        throw new IOException( "interrupted while waiting for chart" );
+      }
+      catch( ExecutionException x )
+      {
+        if (x.getCause() instanceof IOException)
+          throw (IOException)x.getCause();
+        if (x.getCause() instanceof RuntimeException)
+          throw (RuntimeException)x.getCause();
+        throw new RuntimeException( x.getCause() );
+      }
+    }
+    /**
+     * Start drawing a chart on the render pool, or find the one already being drawn.
+     * It is cancelled if the pool's queue is full.
+     */
+    private Render render( final Options opts, final String cacheKey, final boolean isTransient )
+    {
+      Render task = new Render( cacheKey, new Callable<byte[]>() {
+        public byte[] call() throws IOException
+        {
+          // it may have just been finished by another request
+          byte[] image = memCache.get( cacheKey );
+          if (image != null)
+            return image;
+          ByteArrayOutputStream rendered = new ByteArrayOutputStream( 65536 );
+          generate( opts, rendered );
+          image = rendered.toByteArray();
+          diskCache.write( cacheKey, isTransient, image );
+          memCache.put( cacheKey, image, isTransient );
+          return image;
+        }
+      } );
+      Render running = loading.putIfAbsent( cacheKey, task );
+      if (running == null)
+      {
+        running = task;
+        try
+        {
+          renderPool.execute( task );
+        }
+        catch( RejectedExecutionException x )
+        {
+          // let anyone else waiting for it know
+          task.cancel( false );
+        }
+      }
+      return running;
     }
-    
     public static void copy( File in, OutputStream out ) throws IOException
     {
       FileInputStream inStream = new FileInputStream( in );
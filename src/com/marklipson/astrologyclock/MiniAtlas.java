@@ -1,13 +1,18 @@
 package com.marklipson.astrologyclock;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.ZipInputStream;
@@ -19,8 +24,6 @@ import java.util.zip.ZipInputStream;
  */
 public class MiniAtlas
 {
-    // there is only one atlas instance at a time
-    private static MiniAtlas instance;
     // atlas content is stored in memory
     static public class Entry implements Cloneable, Comparable<Entry>
     {
@@ -85,24 +88,43 @@ public class MiniAtlas
      */
     private final static int MAX_FIRST_CITY_LETTERS = 4;
 
+    /**
+     * There is only one atlas instance.  It is loaded the first time it is requested,
+     * and the class loader takes care of publishing it safely.
+     */
+    private static class Holder
+    {
+        static final MiniAtlas instance = new MiniAtlas();
+    }
     /**
      * Get/create the singleton instance.
      */
-    public static synchronized MiniAtlas getInstance()
+    public static MiniAtlas getInstance()
     {
-        if (instance == null)
-            instance = new MiniAtlas();
-        return instance;
+        return Holder.instance;
     }
     
+    /**
+     * Identifies a snapshot file, and its format version.
+     */
+    private final static int SNAPSHOT_MAGIC = 0x4a41544c;
+    private final static int SNAPSHOT_VERSION = 1;
+
     /**
      * Construction.
      */
     private MiniAtlas()
     {
+        long t0 = System.nanoTime();
+        if (load_snapshot())
+        {
+            Startup.report( "atlas (snapshot)", t0 );
+            return;
+        }
         if (! load_US( true ))
           load_US( false );
         load_intl();
+        Startup.report( "atlas", t0 );
     }
 
     /**
@@ -269,6 +291,129 @@ public class MiniAtlas
         return true;
         //System.out.println( "loaded US, took " + (System.currentTimeMillis() - t0) );
     }
+    /**
+     * Load entries and indexes from a snapshot written by writeSnapshot(), if there is one.
+     * This skips unzipping and parsing the text files, which takes most of the load
+     * time.
+     */
+    private boolean load_snapshot()
+    {
+        InputStream in0 = MiniAtlas.class.getResourceAsStream( "resources/atlas/atlas.bin" );
+        if (in0 == null)
+            return false;
+        try
+        {
+            DataInputStream in = new DataInputStream( new BufferedInputStream( in0, 65536 ) );
+            try
+            {
+                if (in.readInt() != SNAPSHOT_MAGIC  ||  in.readInt() != SNAPSHOT_VERSION)
+                    throw new IOException( "not an atlas snapshot, or an old version" );
+                // states and countries are shared between entries
+                String[] states = new String[ in.readInt() ];
+                for (int n=0; n < states.length; n++)
+                    states[n] = in.readUTF().intern();
+                int nEntries = in.readInt();
+                List<Entry> loaded = new ArrayList<Entry>( nEntries );
+                for (int n=0; n < nEntries; n++)
+                {
+                    Entry entry = new Entry();
+                    int state = in.readShort();
+                    entry.state = (state < 0) ? null : states[ state ];
+                    entry.city = in.readUTF();
+                    entry.lat = in.readFloat();
+                    entry.lng = in.readFloat();
+                    entry.population = in.readInt();
+                    loaded.add( entry );
+                }
+                Map<String,List<Entry>> loadedCities = readIndex( in, loaded );
+                Map<String,List<Entry>> loadedStates = readIndex( in, loaded );
+                // only use it if it was read completely
+                entries = loaded;
+                cityStartsWith = loadedCities;
+                stateIndex = loadedStates;
+                return true;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch( IOException x )
+        {
+            System.err.println( "unable to load atlas snapshot: " + x.getMessage() );
+            return false;
+        }
+    }
+    /**
+     * Read one of the indexes from a snapshot, as lists of entry numbers.
+     */
+    private static Map<String,List<Entry>> readIndex( DataInputStream in, List<Entry> entries ) throws IOException
+    {
+        int nKeys = in.readInt();
+        Map<String,List<Entry>> index = new HashMap<String,List<Entry>>( nKeys * 4 / 3 + 1 );
+        for (int n=0; n < nKeys; n++)
+        {
+            String key = in.readUTF();
+            int nListed = in.readInt();
+            List<Entry> list = new ArrayList<Entry>( nListed );
+            for (int i=0; i < nListed; i++)
+                list.add( entries.get( in.readInt() ) );
+            index.put( key, list );
+        }
+        return index;
+    }
+    private static void writeIndex( DataOutputStream out, Map<String,List<Entry>> index, Map<Entry,Integer> entryIds ) throws IOException
+    {
+        out.writeInt( index.size() );
+        for (Map.Entry<String,List<Entry>> e : index.entrySet())
+        {
+            out.writeUTF( e.getKey() );
+            out.writeInt( e.getValue().size() );
+            for (Entry entry : e.getValue())
+                out.writeInt( entryIds.get( entry ) );
+        }
+    }
+    /**
+     * Write all the entries and indexes to a snapshot, which is loaded in place of the text files
+     * when it is found in resources/atlas/atlas.bin.
+     */
+    public void writeSnapshot( OutputStream out0 ) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( out0, 65536 ) );
+        out.writeInt( SNAPSHOT_MAGIC );
+        out.writeInt( SNAPSHOT_VERSION );
+        List<String> states = new ArrayList<String>();
+        Map<String,Integer> stateIds = new HashMap<String,Integer>();
+        for (Entry entry : entries)
+        {
+            if (entry.state != null  &&  ! stateIds.containsKey( entry.state ))
+            {
+                stateIds.put( entry.state, states.size() );
+                states.add( entry.state );
+            }
+        }
+        if (states.size() > Short.MAX_VALUE)
+            throw new IOException( "too many states/countries for snapshot" );
+        out.writeInt( states.size() );
+        for (String state : states)
+            out.writeUTF( state );
+        out.writeInt( entries.size() );
+        for (Entry entry : entries)
+        {
+            out.writeShort( (entry.state == null) ? -1 : stateIds.get( entry.state ) );
+            out.writeUTF( entry.city );
+            out.writeFloat( entry.lat );
+            out.writeFloat( entry.lng );
+            out.writeInt( entry.population );
+        }
+        // entries are matched by identity, not by contents
+        Map<Entry,Integer> entryIds = new IdentityHashMap<Entry,Integer>();
+        for (Entry entry : entries)
+            entryIds.put( entry, entryIds.size() );
+        writeIndex( out, cityStartsWith, entryIds );
+        writeIndex( out, stateIndex, entryIds );
+        out.flush();
+    }
     private int quickSplit( String str, char divider, String[] output )
     {
         int n = 0;
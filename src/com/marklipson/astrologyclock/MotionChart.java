@@ -278,12 +278,21 @@ public class MotionChart
           int px = 0, py = 0;
           g.setColor( new Color( planet.color.getRed(), planet.color.getGreen(), planet.color.getBlue(), 128 ) );
           double tStep = resolution * jdPerPixel;
+          // find all the positions for the curve at once
+          int xs[] = new int[ xSteps+1 ];
+          double ts[] = new double[ xSteps+1 ];
+          double lngs[] = new double[ xSteps+1 ];
           for (int xStep=0; xStep <= xSteps; xStep++)
           {
-            int lX = (int)(innerBounds.x + innerBounds.width * ((double)xStep / xSteps));
-            double tX = calcT( lX );
-            double lng = refChart.isHeliocentric() ? refChart.helioLongitude( planet, tX ) : refChart.geoLongitude( planet, tX );
-            int lY = calcY( lng );
+            xs[xStep] = (int)(innerBounds.x + innerBounds.width * ((double)xStep / xSteps));
+            ts[xStep] = calcT( xs[xStep] );
+          }
+          refChart.longitudes( planet, ts, lngs );
+          for (int xStep=0; xStep <= xSteps; xStep++)
+          {
+            int lX = xs[xStep];
+            double tX = ts[xStep];
+            int lY = calcY( lngs[xStep] );
             if (xStep > 0)
             {
               if (Math.abs( lY - py ) < 2*innerBounds.height/3)
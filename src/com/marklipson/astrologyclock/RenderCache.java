@@ -0,0 +1,134 @@
+package com.marklipson.astrologyclock;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rendered charts (PNG images) kept in memory, in front of Generator's disk cache.
+ *
+ * The cache holds up to a given number of bytes of images, dropping the least
+ * recently used ones to make room.  Like the disk cache, an image expires once it
+ * has gone unused for a while: 3 minutes for charts of the current time, which will
+ * not be asked for again for long, and 3 days for others.  Expired images are kept
+ * as long again (see getStale()) in case a fresh one can't be drawn in time.
+ */
+public class RenderCache
+{
+  /**
+   * How long an unused chart is kept, in ms (see Options.isTransient()).
+   */
+  static final long TRANSIENT_TTL = 3*60*1000;
+  static final long PERMANENT_TTL = 3*86400*1000L;
+  /**
+   * How long an expired chart is kept for when a fresh one can't be drawn, as a
+   * multiple of how long it lasts.
+   */
+  static final int STALE_FACTOR = 2;
+
+  private static class Entry
+  {
+    final byte[] image;
+    final long ttl;
+    long lastUsed;
+    Entry( byte[] image, long ttl, long now )
+    {
+      this.image = image;
+      this.ttl = ttl;
+      this.lastUsed = now;
+    }
+  }
+
+  private final long maxBytes;
+  private long bytes;
+  // in order of use, least recent first
+  private final LinkedHashMap<String,Entry> entries = new LinkedHashMap<String,Entry>( 256, 0.75f, true );
+  private long hits, misses;
+
+  /**
+   * @param maxBytes  total size of the images to keep
+   */
+  public RenderCache( long maxBytes )
+  {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Get a chart's image, or null if it isn't here or has expired.
+   */
+  public synchronized byte[] get( String key )
+  {
+    Entry entry = entries.get( key );
+    long now = System.currentTimeMillis();
+    if (entry != null  &&  now - entry.lastUsed > entry.ttl)
+      entry = null;
+    if (entry == null)
+    {
+      misses ++;
+      return null;
+    }
+    hits ++;
+    entry.lastUsed = now;
+    return entry.image;
+  }
+
+  /**
+   * Get a chart's image even if it has expired, or null if it isn't here at all.
+   * This is for when a fresh one can't be drawn right now, and doesn't keep it
+   * from expiring.
+   */
+  public synchronized byte[] getStale( String key )
+  {
+    Entry entry = entries.get( key );
+    return (entry == null) ? null : entry.image;
+  }
+
+  /**
+   * Keep a chart's image.  Images too big for the cache are not kept.
+   */
+  public synchronized void put( String key, byte[] image, boolean isTransient )
+  {
+    remove( key );
+    if (image.length > maxBytes)
+      return;
+    long now = System.currentTimeMillis();
+    entries.put( key, new Entry( image, isTransient ? TRANSIENT_TTL : PERMANENT_TTL, now ) );
+    bytes += image.length;
+    // make room, dropping the least recently used
+    for (Iterator<Map.Entry<String,Entry>> i = entries.entrySet().iterator(); i.hasNext()  &&  bytes > maxBytes; )
+    {
+      Entry oldest = i.next().getValue();
+      i.remove();
+      bytes -= oldest.image.length;
+    }
+  }
+
+  private void remove( String key )
+  {
+    Entry entry = entries.remove( key );
+    if (entry != null)
+      bytes -= entry.image.length;
+  }
+
+  /**
+   * Drop everything that has been expired for a while (see STALE_FACTOR).
+   */
+  public synchronized void purge()
+  {
+    long now = System.currentTimeMillis();
+    for (Iterator<Entry> i = entries.values().iterator(); i.hasNext(); )
+    {
+      Entry entry = i.next();
+      if (now - entry.lastUsed > entry.ttl * STALE_FACTOR)
+      {
+        i.remove();
+        bytes -= entry.image.length;
+      }
+    }
+  }
+
+  public synchronized String toString()
+  {
+    return "render cache: " + entries.size() + " charts, " + bytes / 1024 + " KB, " + hits + " hits, " + misses + " misses";
+  }
+}
@@ -1,6 +1,22 @@
 package com.marklipson.astrologyclock;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.marklipson.astrologyclock.ChartWheel.PlanetRing;
 
@@ -9,34 +25,146 @@ import com.marklipson.astrologyclock.ChartWheel.PlanetRing;
  */
 public class Search
 {
-  // associated ChartWheel - needed for zodiac selection, etc.
-  private ChartWheel wheel;
-  private ChartWheel.PlanetRing ring;
+  // the ring whose planets are searched for, by name
+  private final ChartWheel.PlanetRing ring;
   private static final int ASCENDANT = 100;
   private static final int MIDHEAVEN = 101;
+  // chart settings, taken when the instance is set up so that searches don't depend
+  // on the chart, and can run on several threads at once
+  private final Ephemeris ephemeris;
+  private final boolean heliocentric;
+  private final double lat, lng;
+  private final double zodiacOffset;
+  // body handle for each planet in the ring
+  private final int[] bodies;
+  // catalog of ingresses and stations, if there is one and it applies to these settings
+  private final EventIndex index;
 
   /**
-   * Set up a searching instance.
+   * Set up a searching instance, for the chart's current settings.
    */
   public Search( ChartWheel.PlanetRing ring )
   {
-    this.wheel = ring.getChartWheel();
+    ChartWheel wheel = ring.getChartWheel();
     this.ring = ring;
+    ephemeris = wheel.getEphemeris();
+    heliocentric = wheel.isHeliocentric();
+    double[] place = wheel.getPlace();
+    lat = place[0];
+    lng = place[1];
+    zodiacOffset = ChartData.zodiacOffset( wheel.getJD(), wheel.getZodiac() );
+    bodies = new int[ ring.planets.length ];
+    for (int n=0; n < bodies.length; n++)
+      bodies[n] = ring.planets[n].id;
+    double oe = ChartData.calcOE( ring.t );
+    ascendantLimits = calcAngleLimits( true, lat, oe );
+    midheavenLimits = calcAngleLimits( false, lat, oe );
+    // the catalog is for geocentric positions in the tropical zodiac
+    if (! heliocentric  &&  zodiacOffset == 0  &&  ephemeris == Ephemeris.getInstance())
+      index = EventIndex.getInstance();
+    else
+      index = null;
+  }
+
+  /**
+   * The last position looked up for each planet, and the AC and MC, on a thread.
+   * The parts of an expression often need the same planet at the same time, e.g.
+   * venus and the moon in "venus square moon and venus semisquare saturn and moon
+   * semisquare saturn", or both planets of an aspect while it is tested and then
+   * solved for.
+   *
+   * There is one per thread, shared by all instances: it only records which one it
+   * holds positions for, by number, so that threads that outlive a search (such as
+   * the search pool's) don't keep the instance around.
+   */
+  private static class PositionMemo
+  {
+    int owner;
+    double[] t = new double[0];
+    double[] pos = new double[0];
+    void reset( int owner, int nSlots )
+    {
+      this.owner = owner;
+      if (t.length < nSlots)
+      {
+        t = new double[ nSlots ];
+        pos = new double[ nSlots ];
+      }
+      Arrays.fill( t, Double.NaN );
+    }
   }
+  private static final ThreadLocal<PositionMemo> memo = new ThreadLocal<PositionMemo>()
+  {
+    protected PositionMemo initialValue()
+    {
+      return new PositionMemo();
+    }
+  };
+  // numbers instances, for PositionMemo
+  private static final AtomicInteger instances = new AtomicInteger();
+  private final int instance = instances.incrementAndGet();
 
   /**
    * Get a planet's position.
    */
   private double getPlanetPos( int planet, double t )
   {
+    PositionMemo m = memo.get();
+    if (m.owner != instance)
+      m.reset( instance, bodies.length + 2 );
+    int slot = planet;
     if (planet == ASCENDANT)
-      return wheel.calcAscendant( t );
-    if (planet == MIDHEAVEN)
-      return wheel.calcMidheaven( t );
-    if (wheel.isHeliocentric())
-      return wheel.helioLongitude( ring.planets[planet], t );
+      slot = bodies.length;
+    else if (planet == MIDHEAVEN)
+      slot = bodies.length + 1;
+    if (m.t[ slot ] == t)
+      return m.pos[ slot ];
+    double pos = calcPlanetPos( planet, t );
+    m.t[ slot ] = t;
+    m.pos[ slot ] = pos;
+    return pos;
+  }
+  private double calcPlanetPos( int planet, double t )
+  {
+    double pos;
+    if (planet == ASCENDANT)
+      pos = ChartData.calcAscendant( t, lng, lat );
+    else if (planet == MIDHEAVEN)
+      pos = ChartData.calcMidheaven( t, lng );
+    else if (heliocentric)
+      pos = ChartData.helioLongitude( ephemeris, bodies[planet], t );
+    else if (bodies[planet] == ChartWheel.NORTHNODE)
+      pos = ChartData.calculateMeanLunarNode( t );
+    else if (bodies[planet] == ChartWheel.SOUTHNODE)
+      pos = ChartData.mod2pi( ChartData.calculateMeanLunarNode( t ) + Math.PI );
     else
-      return wheel.geoLongitude( ring.planets[planet], t );
+      pos = ChartData.geoLongitude( ephemeris, bodies[planet], t );
+    return adjust( pos );
+  }
+  /**
+   * Get a planet's positions for a series of times.
+   */
+  private void getPlanetPos( int planet, double[] t, double[] out )
+  {
+    int body = (planet == ASCENDANT  ||  planet == MIDHEAVEN) ? -1 : bodies[planet];
+    if (heliocentric  ||  body < 0  ||  body == ChartWheel.NORTHNODE  ||  body == ChartWheel.SOUTHNODE)
+    {
+      for (int n=0; n < t.length; n++)
+        out[n] = calcPlanetPos( planet, t[n] );
+      return;
+    }
+    ChartData.geoLongitudes( ephemeris, body, t, out );
+    for (int n=0; n < t.length; n++)
+      out[n] = adjust( out[n] );
+  }
+  /**
+   * Apply the zodiac adjustment to a tropical longitude.
+   */
+  private double adjust( double x )
+  {
+    if (zodiacOffset == 0)
+      return x;
+    return ChartData.mod2pi( x + zodiacOffset );
   }
   private double angleDiff( double a1, double a2 )
   {
@@ -45,6 +173,193 @@ public class Search
       d = 2*Math.PI - d;
     return d;
   }
+  /**
+   * Angle from a2 to a1, between -PI and PI.
+   */
+  private double signedDiff( double a1, double a2 )
+  {
+    return Math.IEEEremainder( a1 - a2, 2*Math.PI );
+  }
+
+  // fastest motion in longitude of each body (by handle) in degrees per day, from
+  // scanning the ephemeris and rounded up.  0 means there is no limit to rely on.
+  private static final double[] MAX_GEO_SPEED =
+    {
+      1.07, 2.31, 1.33, 0, 16.2, 0.84, 0.255, 0.138, 0.067, 0.040, 0.043, 0.056, 0.056, 0.156, 0.49, 0.0155
+    };
+  private static final double[] MAX_HELIO_SPEED =
+    {
+      0, 6.65, 1.71, 1.073, 1.11, 0.68, 0.097, 0.040, 0.0137, 0.0064, 0.0075, 0, 0, 0.050, 0.27, 0.0022
+    };
+  // fastest change in geocentric speed, in degrees per day per day, for the bodies
+  // whose speed the ephemeris gives
+  private static final double[] MAX_GEO_ACCELERATION =
+    {
+      0.0008, 0.25, 0.053, 0, 0.66, 0.019, 0.0046, 0.0026, 0.0012, 0.00074, 0.00078, 0.0001, 0.0001, 0, 0, 0
+    };
+  // rate of sidereal time, radians per day
+  private static final double SIDEREAL_RATE = 2*Math.PI * 1.00273790935;
+  // limits of the AC and MC motion (see calcAngleLimits())
+  private final double[] ascendantLimits, midheavenLimits;
+
+  /**
+   * Fastest a planet, or the AC or MC, can move, in radians per day.  Infinite
+   * if there is no limit to rely on.
+   */
+  private double getMaxSpeed( int planet )
+  {
+    if (planet == ASCENDANT)
+      return ascendantLimits[0];
+    if (planet == MIDHEAVEN)
+      return midheavenLimits[0];
+    return getLimit( heliocentric ? MAX_HELIO_SPEED : MAX_GEO_SPEED, bodies[planet] );
+  }
+  /**
+   * Fastest a planet's speed can change, in radians per day per day.  Infinite
+   * if there is no limit to rely on.
+   */
+  private double getMaxAcceleration( int planet )
+  {
+    if (planet == ASCENDANT)
+      return ascendantLimits[1];
+    if (planet == MIDHEAVEN)
+      return midheavenLimits[1];
+    if (heliocentric)
+      return Double.POSITIVE_INFINITY;
+    return getLimit( MAX_GEO_ACCELERATION, bodies[planet] );
+  }
+  private static double getLimit( double[] table, int body )
+  {
+    if (body < 0  ||  body >= table.length  ||  table[ body ] == 0)
+      return Double.POSITIVE_INFINITY;
+    return table[ body ] * ChartData.d2r;
+  }
+  /**
+   * Get a planet's speed in longitude, in radians per day.  NaN if it isn't known.
+   */
+  private double getPlanetSpeed( int planet, double t )
+  {
+    if (planet == ASCENDANT  ||  planet == MIDHEAVEN)
+    {
+      final double dt = 1e-5;
+      return signedDiff( getPlanetPos( planet, t + dt ), getPlanetPos( planet, t - dt ) ) / (2*dt);
+    }
+    if (heliocentric)
+      return Double.NaN;
+    if (bodies[planet] == ChartWheel.NORTHNODE  ||  bodies[planet] == ChartWheel.SOUTHNODE)
+      return -33.757145 / 36525;
+    return ephemeris.speed( bodies[planet], t );
+  }
+  /**
+   * The AC and MC move unevenly, the AC fastest at high latitudes.  Find their
+   * fastest speed and change in speed over a day (as for getMaxSpeed() and
+   * getMaxAcceleration()), and their slowest speed.  Near the poles the AC jumps,
+   * so it has no limits.
+   */
+  private double[] calcAngleLimits( boolean ascendant, double lat, double oe )
+  {
+    if (ascendant  &&  Math.abs( Math.tan( lat ) * Math.tan( oe ) ) > 0.99)
+      return new double[] { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, 0 };
+    // sample the angle through a full turn of sidereal time
+    final int nSamples = 2880;
+    final double step = 2*Math.PI / nSamples;
+    double maxSpeed = 0, maxAcceleration = 0, minSpeed = Double.POSITIVE_INFINITY;
+    double prevSpeed = Double.NaN;
+    double prev = ascendant ? ChartData.calcAscendantRAMC( 0, oe, lat ) : ChartData.calcMidheavenRAMC( 0, oe );
+    for (int n=1; n <= nSamples + 1; n++)
+    {
+      double ramc = n * step;
+      double angle = ascendant ? ChartData.calcAscendantRAMC( ramc, oe, lat ) : ChartData.calcMidheavenRAMC( ramc, oe );
+      double speed = signedDiff( angle, prev ) / step;
+      maxSpeed = Math.max( maxSpeed, Math.abs( speed ) );
+      minSpeed = Math.min( minSpeed, speed );
+      if (! Double.isNaN( prevSpeed ))
+        maxAcceleration = Math.max( maxAcceleration, Math.abs( speed - prevSpeed ) / step );
+      prevSpeed = speed;
+      prev = angle;
+    }
+    return new double[]
+      {
+        maxSpeed * SIDEREAL_RATE * 1.25,
+        maxAcceleration * SIDEREAL_RATE * SIDEREAL_RATE * 1.25,
+        Math.max( minSpeed, 0 ) * SIDEREAL_RATE * 0.8
+      };
+  }
+  private static boolean isAngle( int planet )
+  {
+    return planet == ASCENDANT  ||  planet == MIDHEAVEN;
+  }
+  /**
+   * Whether the times when the AC or MC passes a target can be solved for (see
+   * findAngleIntervals()), i.e. whether it always moves faster than the target.
+   */
+  private boolean canSolveAngle( int angle, double maxTargetSpeed )
+  {
+    double[] limits = (angle == ASCENDANT) ? ascendantLimits : midheavenLimits;
+    return maxTargetSpeed < limits[2];
+  }
+  /**
+   * Find the times between tFrom and tTo when the AC or MC is within 'halfWidth' of
+   * a target, which moves more slowly than it does (e.g. a planet, plus an aspect).
+   * The angle goes all the way around each day, overtaking the target, so it comes
+   * within range and leaves it again once a day.  Each of those times is solved for
+   * directly from the sidereal time at which the angle is at the target (see
+   * ChartData.calcRAMCForAscendant()), allowing for the target's motion by repeating
+   * that with the target's position at the time found.
+   */
+  private Intervals findAngleIntervals( int angle, Curve target, double halfWidth, double tFrom, double tTo, Timeout timeout ) throws SearchTimeout
+  {
+    Intervals found = new Intervals();
+    double t = tFrom;
+    boolean in = ChartData.mod2pi( getPlanetPos( angle, t ) - target.at( t ) + halfWidth ) <= 2*halfWidth;
+    double tIn = tFrom;
+    while (t < tTo)
+    {
+      if (timeout != null)
+        timeout.step();
+      if (in)
+      {
+        double tOut = solveAngle( angle, target, halfWidth, t );
+        found.add( tIn, Math.min( tOut, tTo ) );
+        t = tOut;
+      }
+      else
+      {
+        tIn = solveAngle( angle, target, -halfWidth, t );
+        t = tIn;
+      }
+      in = ! in;
+    }
+    return found;
+  }
+  /**
+   * Find the first time after t when the AC or MC reaches a target plus an offset.
+   */
+  private double solveAngle( int angle, Curve target, double offset, double t )
+  {
+    double tFound = timeOfAngle( angle, target.at( t ) + offset, t, true );
+    for (int n=0; n < 20; n++)
+    {
+      double tNext = timeOfAngle( angle, target.at( tFound ) + offset, tFound, false );
+      boolean done = Math.abs( tNext - tFound ) < TIME_TOLERANCE / 100;
+      tFound = tNext;
+      if (done)
+        break;
+    }
+    return Math.max( tFound, t );
+  }
+  /**
+   * Find the first time from t0 on, or the nearest time to t0, when the AC or MC is
+   * at the given position.
+   */
+  private double timeOfAngle( int angle, double pos, double t0, boolean after )
+  {
+    // undo the zodiac adjustment (see adjust())
+    pos -= zodiacOffset;
+    double oe = ChartData.calcOE( t0 );
+    double ramc = (angle == ASCENDANT) ? ChartData.calcRAMCForAscendant( pos, oe, lat ) : ChartData.calcRAMCForMidheaven( pos, oe );
+    return ChartData.calcTimeForRAMC( ramc, lng, t0, after );
+  }
   private int getPlanetNumber( String planet )
   {
     for (int n=0; n < ring.planets.length; n++)
@@ -66,6 +381,20 @@ public class Search
   /**
    * Searchable events derive from this class.
    */
+  /**
+   * Time step to use when searching for something about a planet.
+   */
+  private double getTimeStepForPlanet( int planet )
+  {
+    if (planet == ChartWheel.MOON)
+      return 0.5;
+    else if (planet == ASCENDANT  ||  planet == MIDHEAVEN)
+      return 0.02;
+    else if (planet >= ChartWheel.JUPITER)
+      return 30;
+    else
+      return 5;
+  }
   abstract public class Event
   {
     /**
@@ -75,23 +404,167 @@ public class Search
     {
       return 10;
     }
-    double getTimeStepForPlanet( int planet )
-    {
-      if (planet == ChartWheel.MOON)
-        return 0.5;
-      else if (planet == ASCENDANT  ||  planet == MIDHEAVEN)
-        return 0.02;
-      else if (planet >= ChartWheel.JUPITER)
-        return 30;
-      else
-        return 5;
-    }
     /**
      * Test whether this condition is met.  Returns NaN if it simply isn't, and
      * a smaller value as it approaches an exact match.
      */
     abstract double test( double t );
+    /**
+     * Test a series of times, setting out[n] to test( t[n] ).  Events override this
+     * to look up positions for all the times at once.
+     */
+    void test( double[] t, double[] out )
+    {
+      for (int n=0; n < t.length; n++)
+        out[n] = test( t[n] );
+    }
+    /**
+     * Signed distance from the event, which varies continuously with time.  It is
+     * zero or less while the event is in effect, and its size says how far off it
+     * is, i.e. in radians of planetary motion.
+     *
+     * If 'step' is given, step[0] is set to how long the distance can be relied on
+     * to stay on the same side of zero, going forward or backward in time.  Where
+     * that can't be worked out it is getTimeStep().
+     */
+    abstract double distance( double t, boolean forward, double[] step );
+    double distance( double t )
+    {
+      return distance( t, true, null );
+    }
+    /**
+     * For events which become exact, a value which passes through zero when they
+     * do, and whose size is test()'s error value.  NaN for other events.
+     */
+    double exactness( double t )
+    {
+      return Double.NaN;
+    }
+    /**
+     * Find the times between tFrom and tTo when the event is in effect.  Events
+     * scan for them by stepping as for search(), and combinations of events combine
+     * the intervals found for their parts.
+     *
+     * @param timeout  tested at each step, if given, so that a search stops
+     *                 part way through a span when it is cancelled
+     */
+    Intervals findIntervals( double tFrom, double tTo, Timeout timeout ) throws SearchTimeout
+    {
+      Intervals found = new Intervals();
+      double step[] = new double[1];
+      double minStep = getTimeStep() * MIN_STEP;
+      double t = tFrom;
+      double d = distance( t, true, step );
+      double tIn = tFrom;
+      while (t < tTo)
+      {
+        if (timeout != null)
+          timeout.step();
+        double tNext = Math.min( t + Math.max( step[0], minStep ), tTo );
+        double dNext = distance( tNext, true, step );
+        if (d <= 0  &&  ! (dNext <= 0))
+          found.add( tIn, findEdge( this, tNext, dNext, t, d ) );
+        else if (dNext <= 0  &&  ! (d <= 0))
+          tIn = findEdge( this, t, d, tNext, dNext );
+        t = tNext;
+        d = dNext;
+      }
+      if (d <= 0)
+        found.add( tIn, tTo );
+      return found;
+    }
+    /**
+     * Find the times between tFrom and tTo when the event is in effect, without a
+     * time limit.
+     */
+    final Intervals findIntervals( double tFrom, double tTo )
+    {
+      try
+      {
+        return findIntervals( tFrom, tTo, null );
+      }
+      catch( SearchTimeout x )
+      {
+        // only thrown by a Timeout
+        throw new IllegalStateException( x );
+      }
+    }
+    /**
+     * Time step findIntervals() can take through time, roughly.  A combination of
+     * events which must all be in effect can be scanned for at the pace of the
+     * slowest of them.
+     */
+    double getIntervalTimeStep()
+    {
+      return getTimeStep();
+    }
+    /**
+     * Whether this event is a combination of others, which is searched for by
+     * combining the times when its parts are in effect.
+     */
+    boolean isCombination()
+    {
+      return false;
+    }
+    /**
+     * Whether findIntervals() works out when this event is in effect directly, by
+     * looking it up in the event index or by solving for the times, so that it is
+     * quicker to search for that way than by stepping through time.
+     */
+    boolean solvesIntervals()
+    {
+      return false;
+    }
+    /**
+     * How long an angular distance can be relied on to stay on the same side of
+     * zero.  The planets can't move faster than maxRate, so the distance can't
+     * close faster than that.  If its rate of change is known, and maxAcceleration
+     * limits how quickly that can change, it can take much longer to turn around.
+     * It can turn around abruptly, though, at the lowest distance (when the event
+     * is exact) and at the other places where the planets line up (distance
+     * 'turning' or more).
+     *
+     * @param d                distance
+     * @param rate             its rate of change in the direction of the search, or NaN
+     * @param maxRate          fastest it can change
+     * @param maxAcceleration  fastest its rate can change
+     * @param lowest           lowest distance there can be
+     * @param turning          lowest positive distance where it can turn abruptly
+     */
+    double getSafeTime( double d, double rate, double maxRate, double maxAcceleration, double lowest, double turning )
+    {
+      if (Double.isInfinite( maxRate )  ||  Double.isNaN( d ))
+        return getTimeStep();
+      double tSafe = Math.abs( d ) / maxRate;
+      if (Double.isNaN( rate )  ||  Double.isInfinite( maxAcceleration ))
+        return tSafe;
+      // look at it from the side of zero it is on
+      if (d < 0)
+      {
+        d = -d;
+        rate = -rate;
+        turning = -lowest;
+      }
+      if (d >= turning)
+        return tSafe;
+      // time to get back to zero if it turns around as fast as it can
+      double dSafe = d - POSITION_TOLERANCE;
+      if (dSafe <= 0)
+        return tSafe;
+      double tAcc;
+      if (maxAcceleration > 0)
+        tAcc = (rate + Math.sqrt( rate*rate + 2*maxAcceleration*dSafe )) / maxAcceleration;
+      else
+        tAcc = (rate < 0) ? dSafe / -rate : Double.POSITIVE_INFINITY;
+      // time to get back to zero if it turns around abruptly
+      double tTurning = (2*turning - d) / maxRate;
+      return Math.max( tSafe, Math.min( tAcc, tTurning ) );
+    }
   }
+  // allowance for error in looked up positions, radians
+  private static final double POSITION_TOLERANCE = 1e-5;
+  // events shorter than this fraction of getTimeStep() may be missed
+  private static final double MIN_STEP = 0.05;
   
   /**
    * Search for a planet at a given position.
@@ -119,6 +592,30 @@ public class Search
         return Double.NaN;
       return err;
     }
+    void test( double[] t, double[] out )
+    {
+      getPlanetPos( planet, t, out );
+      for (int n=0; n < t.length; n++)
+      {
+        double err = angleDiff( out[n], pos );
+        out[n] = (err > orb) ? Double.NaN : err;
+      }
+    }
+    double distance( double t, boolean forward, double[] step )
+    {
+      double dev = signedDiff( getPlanetPos( planet, t ), pos );
+      double d = Math.abs( dev ) - orb;
+      if (step != null)
+      {
+        double rate = Math.signum( dev ) * getPlanetSpeed( planet, t ) * (forward ? 1 : -1);
+        step[0] = getSafeTime( d, rate, getMaxSpeed( planet ), getMaxAcceleration( planet ), -orb, Math.PI - orb );
+      }
+      return d;
+    }
+    double exactness( double t )
+    {
+      return signedDiff( getPlanetPos( planet, t ), pos );
+    }
   }
   /**
    * Test for a planet in a sign.
@@ -144,13 +641,43 @@ public class Search
         return Double.NaN;
       return (pos - sign)*(Math.PI/6);
     }
+    void test( double[] t, double[] out )
+    {
+      getPlanetPos( planet, t, out );
+      for (int n=0; n < t.length; n++)
+      {
+        double pos = out[n] / (Math.PI/6);
+        out[n] = (Math.floor( pos ) != sign) ? Double.NaN : (pos - sign)*(Math.PI/6);
+      }
+    }
+    double distance( double t, boolean forward, double[] step )
+    {
+      // distance from the middle of the sign, less half a sign
+      double dev = signedDiff( getPlanetPos( planet, t ), (sign + 0.5) * (Math.PI/6) );
+      double d = Math.abs( dev ) - Math.PI/12;
+      if (step != null)
+      {
+        double rate = Math.signum( dev ) * getPlanetSpeed( planet, t ) * (forward ? 1 : -1);
+        step[0] = getSafeTime( d, rate, getMaxSpeed( planet ), getMaxAcceleration( planet ), -Math.PI/12, Math.PI*11/12 );
+      }
+      return d;
+    }
+    boolean solvesIntervals()
+    {
+      return isInIndex( EventIndex.INGRESS, planet );
+    }
+    Intervals findIntervals( double tFrom, double tTo, Timeout timeout ) throws SearchTimeout
+    {
+      Intervals found = findIndexedIntervals( EventIndex.INGRESS, planet, sign, tFrom, tTo );
+      return (found != null) ? found : super.findIntervals( tFrom, tTo, timeout );
+    }
   }
   /**
    * Search for an aspect between two planets.
    */
   private class Aspect extends Event
   {
-    private int planet1, planet2;
+    int planet1, planet2;
     private double aspect, orb;
     Aspect( int p1, int p2, double aspect, double orb )
     {
@@ -163,6 +690,22 @@ public class Search
     {
       return getPlanetPos( planet2, t ); 
     }
+    protected void getPos2( double[] t, double[] out )
+    {
+      getPlanetPos( planet2, t, out );
+    }
+    protected double getSpeed2( double t )
+    {
+      return getPlanetSpeed( planet2, t );
+    }
+    protected double getMaxSpeed2()
+    {
+      return getMaxSpeed( planet2 );
+    }
+    protected double getMaxAcceleration2()
+    {
+      return getMaxAcceleration( planet2 );
+    }
     public double getTimeStep()
     {
       return Math.min( getTimeStepForPlanet( planet1 ), getTimeStepForPlanet( planet2 ) );
@@ -177,6 +720,92 @@ public class Search
       else
         return Double.NaN;
     }
+    void test( double[] t, double[] out )
+    {
+      double p2[] = new double[ t.length ];
+      getPlanetPos( planet1, t, out );
+      getPos2( t, p2 );
+      for (int n=0; n < t.length; n++)
+      {
+        double delta = angleDiff( angleDiff( out[n], p2[n] ), aspect );
+        out[n] = (delta < orb) ? delta : Double.NaN;
+      }
+    }
+    double distance( double t, boolean forward, double[] step )
+    {
+      double sep = signedDiff( getPlanetPos( planet1, t ), getPos2( t ) );
+      double d = Math.abs( Math.abs( sep ) - aspect ) - orb;
+      if (step != null)
+      {
+        double rate = Math.signum( Math.abs( sep ) - aspect ) * Math.signum( sep ) *
+          (getPlanetSpeed( planet1, t ) - getSpeed2( t )) * (forward ? 1 : -1);
+        // besides when exact, the distance turns when the planets are conjunct or opposed
+        double turning = Math.PI - orb;
+        if (aspect > 0  &&  aspect < Math.PI)
+          turning = Math.min( aspect, Math.PI - aspect ) - orb;
+        step[0] = getSafeTime( d, rate, getMaxSpeed( planet1 ) + getMaxSpeed2(),
+          getMaxAcceleration( planet1 ) + getMaxAcceleration2(), -orb, turning );
+      }
+      return d;
+    }
+    double exactness( double t )
+    {
+      // the aspect can be made either side of planet2
+      double sep = signedDiff( getPlanetPos( planet1, t ), getPos2( t ) );
+      double x1 = signedDiff( sep, aspect );
+      double x2 = signedDiff( sep, -aspect );
+      return (Math.abs( x1 ) < Math.abs( x2 )) ? x1 : x2;
+    }
+    /**
+     * The AC or MC, if it is in this aspect and the times can be solved for, or -1.
+     */
+    protected int getSolvedAngle()
+    {
+      if (isAngle( planet2 )  &&  ! isAngle( planet1 )  &&  canSolveAngle( planet2, getMaxSpeed( planet1 ) ))
+        return planet2;
+      return -1;
+    }
+    /**
+     * Position of whatever the AC or MC is in aspect to.
+     */
+    protected double getTargetPos( double t )
+    {
+      return getPlanetPos( planet1, t );
+    }
+    boolean solvesIntervals()
+    {
+      return getSolvedAngle() >= 0;
+    }
+    double getIntervalTimeStep()
+    {
+      // the AC and MC are solved for, so it goes at the pace of the other planet
+      if (solvesIntervals())
+        return getTimeStepForPlanet( planet1 );
+      return super.getIntervalTimeStep();
+    }
+    Intervals findIntervals( double tFrom, double tTo, Timeout timeout ) throws SearchTimeout
+    {
+      int angle = getSolvedAngle();
+      if (angle < 0)
+        return super.findIntervals( tFrom, tTo, timeout );
+      // the angle can be either side of the target
+      Intervals found = null;
+      for (int side=-1; side <= 1; side += 2)
+      {
+        if (side > 0  &&  (aspect == 0  ||  aspect == Math.PI))
+          break;
+        final double offset = side * aspect;
+        Intervals one = findAngleIntervals( angle, new Curve()
+        {
+          public double at( double t )
+          {
+            return getTargetPos( t ) + offset;
+          }
+        }, orb, tFrom, tTo, timeout );
+        found = (found == null) ? one : found.union( one );
+      }
+      return found;
+    }
   }
   /**
    * Aspect between a planet and a fixed point.
@@ -193,6 +822,30 @@ public class Search
     {
       return pos2;
     }
+    protected void getPos2( double[] t, double[] out )
+    {
+      Arrays.fill( out, 0, t.length, pos2 );
+    }
+    protected double getSpeed2( double t )
+    {
+      return 0;
+    }
+    protected double getMaxSpeed2()
+    {
+      return 0;
+    }
+    protected double getMaxAcceleration2()
+    {
+      return 0;
+    }
+    protected int getSolvedAngle()
+    {
+      return (isAngle( planet1 )  &&  canSolveAngle( planet1, 0 )) ? planet1 : -1;
+    }
+    protected double getTargetPos( double t )
+    {
+      return pos2;
+    }
   }
   /**
    * Search for a retrograde.
@@ -217,6 +870,33 @@ public class Search
       else
         return p0 - p1;
     }
+    void test( double[] t, double[] out )
+    {
+      double t1[] = new double[ t.length ];
+      double p1[] = new double[ t.length ];
+      for (int n=0; n < t.length; n++)
+        t1[n] = t[n] + 0.0005;
+      getPlanetPos( planet, t, out );
+      getPlanetPos( planet, t1, p1 );
+      for (int n=0; n < t.length; n++)
+        out[n] = (p1[n] > out[n]) ? Double.NaN : out[n] - p1[n];
+    }
+    double distance( double t, boolean forward, double[] step )
+    {
+      // the planet's motion over the same interval test() uses
+      if (step != null)
+        step[0] = getTimeStep();
+      return signedDiff( getPlanetPos( planet, t + 0.0005 ), getPlanetPos( planet, t ) );
+    }
+    boolean solvesIntervals()
+    {
+      return isInIndex( EventIndex.STATION, planet );
+    }
+    Intervals findIntervals( double tFrom, double tTo, Timeout timeout ) throws SearchTimeout
+    {
+      Intervals found = findIndexedIntervals( EventIndex.STATION, planet, 1, tFrom, tTo );
+      return (found != null) ? found : super.findIntervals( tFrom, tTo, timeout );
+    }
   }
   /**
    * Test for two events at a time.
@@ -242,6 +922,65 @@ public class Search
       else
         return eA + eB;
     }
+    void test( double[] t, double[] out )
+    {
+      double eB[] = new double[ t.length ];
+      a.test( t, out );
+      b.test( t, eB );
+      // NaN in either gives NaN
+      for (int n=0; n < t.length; n++)
+        out[n] += eB[n];
+    }
+    double getIntervalTimeStep()
+    {
+      return Math.max( a.getIntervalTimeStep(), b.getIntervalTimeStep() );
+    }
+    boolean isCombination()
+    {
+      return true;
+    }
+    Intervals findIntervals( double tFrom, double tTo, Timeout timeout ) throws SearchTimeout
+    {
+      // find when the slower event is in effect, and look for the other only then
+      Event first = a, second = b;
+      if (b.getIntervalTimeStep() > a.getIntervalTimeStep())
+      {
+        first = b;
+        second = a;
+      }
+      Intervals inFirst = first.findIntervals( tFrom, tTo, timeout );
+      Intervals found = new Intervals();
+      for (int n=0; n < inFirst.size(); n++)
+        found.addAll( second.findIntervals( inFirst.start( n ), inFirst.end( n ), timeout ) );
+      return found;
+    }
+    double distance( double t, boolean forward, double[] step )
+    {
+      double dA = a.distance( t, forward, step );
+      double stepA = (step != null) ? step[0] : 0;
+      double dB = b.distance( t, forward, step );
+      if (step != null)
+        step[0] = combineSteps( dA, stepA, dB, step[0], true );
+      return Math.max( dA, dB );
+    }
+  }
+  /**
+   * Work out how long a combination of two events can be relied on not to change.
+   * An 'and' is out of effect while either event is, and an 'or' is in effect while
+   * either event is.
+   */
+  private static double combineSteps( double dA, double stepA, double dB, double stepB, boolean and )
+  {
+    boolean inA = (dA <= 0), inB = (dB <= 0);
+    if (inA == inB)
+    {
+      // while both are out of an 'and', or both in an 'or', either one is enough
+      if (inA != and)
+        return Math.max( stepA, stepB );
+      return Math.min( stepA, stepB );
+    }
+    // otherwise it is decided by the one which is out of an 'and', or in an 'or'
+    return (inA != and) ? stepA : stepB;
   }
   /**
    * Test for two alternate events.
@@ -271,6 +1010,40 @@ public class Search
       else
         return eA + eB;
     }
+    void test( double[] t, double[] out )
+    {
+      double eB[] = new double[ t.length ];
+      a.test( t, out );
+      b.test( t, eB );
+      for (int n=0; n < t.length; n++)
+      {
+        if (Double.isNaN( out[n] ))
+          out[n] = eB[n];
+        else if (! Double.isNaN( eB[n] ))
+          out[n] += eB[n];
+      }
+    }
+    double getIntervalTimeStep()
+    {
+      return Math.min( a.getIntervalTimeStep(), b.getIntervalTimeStep() );
+    }
+    boolean isCombination()
+    {
+      return true;
+    }
+    Intervals findIntervals( double tFrom, double tTo, Timeout timeout ) throws SearchTimeout
+    {
+      return a.findIntervals( tFrom, tTo, timeout ).union( b.findIntervals( tFrom, tTo, timeout ) );
+    }
+    double distance( double t, boolean forward, double[] step )
+    {
+      double dA = a.distance( t, forward, step );
+      double stepA = (step != null) ? step[0] : 0;
+      double dB = b.distance( t, forward, step );
+      if (step != null)
+        step[0] = combineSteps( dA, stepA, dB, step[0], false );
+      return Math.min( dA, dB );
+    }
   }
   /**
    * Logically negate an event.
@@ -294,9 +1067,162 @@ public class Search
       else
         return Double.NaN;
     }
-  }
-  /**
-   * Errors during parsing.
+    void test( double[] t, double[] out )
+    {
+      a.test( t, out );
+      for (int n=0; n < t.length; n++)
+        out[n] = Double.isNaN( out[n] ) ? 0 : Double.NaN;
+    }
+    double getIntervalTimeStep()
+    {
+      return a.getIntervalTimeStep();
+    }
+    boolean isCombination()
+    {
+      return true;
+    }
+    Intervals findIntervals( double tFrom, double tTo, Timeout timeout ) throws SearchTimeout
+    {
+      return a.findIntervals( tFrom, tTo, timeout ).complement( tFrom, tTo );
+    }
+    double distance( double t, boolean forward, double[] step )
+    {
+      // it changes when the event does
+      return - a.distance( t, forward, step );
+    }
+  }
+  /**
+   * Whether the event index lists events of a kind for a planet.
+   */
+  private boolean isInIndex( int kind, int planet )
+  {
+    return index != null  &&  planet < bodies.length  &&  index.has( kind, bodies[ planet ], 0 );
+  }
+  /**
+   * Find the times between tFrom and tTo when a planet is in the state set by the
+   * listed events of a kind which have the given value, i.e. when it is in a sign
+   * or retrograde.  Returns null if the index doesn't cover them.  The state at
+   * tFrom is the value of the last event at or before it.
+   */
+  private Intervals findIndexedIntervals( int kind, int planet, int value, double tFrom, double tTo )
+  {
+    if (! isInIndex( kind, planet )  ||  ! index.covers( tFrom, tTo ))
+      return null;
+    EventIndex.Entry before = index.previous( kind, bodies[ planet ], 0, tFrom );
+    if (before == null)
+      return null;
+    Intervals found = new Intervals();
+    boolean in = (before.value == value);
+    double tIn = tFrom;
+    for (EventIndex.Entry entry : index.find( kind, bodies[ planet ], 0, tFrom, tTo ))
+    {
+      if (entry.value == value  &&  ! in)
+      {
+        tIn = entry.t;
+        in = true;
+      }
+      else if (entry.value != value  &&  in)
+      {
+        found.add( tIn, entry.t );
+        in = false;
+      }
+    }
+    if (in)
+      found.add( tIn, tTo );
+    return found;
+  }
+  /**
+   * A list of times when an event is in effect, in order.  The intervals don't
+   * overlap or touch.
+   */
+  static class Intervals
+  {
+    // start and end of each interval
+    private double[] times = new double[ 16 ];
+    private int count;
+    /**
+     * Number of intervals.
+     */
+    int size()
+    {
+      return count;
+    }
+    double start( int n )
+    {
+      return times[ 2*n ];
+    }
+    double end( int n )
+    {
+      return times[ 2*n + 1 ];
+    }
+    /**
+     * Add an interval which begins at or after the start of the last one, joining
+     * them if they overlap.
+     */
+    void add( double start, double end )
+    {
+      if (count > 0  &&  start <= times[ 2*count - 1 ])
+      {
+        times[ 2*count - 1 ] = Math.max( times[ 2*count - 1 ], end );
+        return;
+      }
+      if (2*count == times.length)
+        times = Arrays.copyOf( times, times.length * 2 );
+      times[ 2*count ] = start;
+      times[ 2*count + 1 ] = end;
+      count ++;
+    }
+    /**
+     * Add the intervals from a list which begins at or after the start of the last
+     * one in this list.
+     */
+    void addAll( Intervals other )
+    {
+      for (int n=0; n < other.count; n++)
+        add( other.start( n ), other.end( n ) );
+    }
+    /**
+     * Times in either this or another list.
+     */
+    Intervals union( Intervals other )
+    {
+      Intervals result = new Intervals();
+      int a = 0, b = 0;
+      while (a < count  ||  b < other.count)
+      {
+        if (b == other.count  ||  (a < count  &&  start( a ) <= other.start( b )))
+        {
+          result.add( start( a ), end( a ) );
+          a ++;
+        }
+        else
+        {
+          result.add( other.start( b ), other.end( b ) );
+          b ++;
+        }
+      }
+      return result;
+    }
+    /**
+     * Times between tFrom and tTo which aren't in this list.
+     */
+    Intervals complement( double tFrom, double tTo )
+    {
+      Intervals result = new Intervals();
+      double start = tFrom;
+      for (int n=0; n < count; n++)
+      {
+        if (start < start( n ))
+          result.add( start, start( n ) );
+        start = Math.max( start, end( n ) );
+      }
+      if (start < tTo)
+        result.add( start, tTo );
+      return result;
+    }
+  }
+  /**
+   * Errors during parsing.
    */
   static public class SearchParseException extends Exception
   {
@@ -523,138 +1449,1201 @@ public class Search
    */
   private class Timeout
   {
-    private long timeoutAt;
+    private final long timeoutAt;
+    // task the scan is for, if it can be cancelled
+    private final SearchTask task;
+    private int nTests = 0;
+    // how far the scan has got, for reporting progress
+    private volatile double t;
     public Timeout( int ms )
     {
-      timeoutAt = System.currentTimeMillis() + ms;
+      this( System.currentTimeMillis() + ms, null, Double.NaN );
+    }
+    Timeout( long timeoutAt, SearchTask task, double tStart )
+    {
+      this.timeoutAt = timeoutAt;
+      this.task = task;
+      t = tStart;
     }
-    public void test() throws SearchTimeout
+    /**
+     * Throw SearchTimeout if time is up, or if the search has been cancelled, either
+     * through its task or by interrupting its thread.  The clock is only looked at
+     * every few steps.
+     *
+     * @param t  time the scan has reached
+     */
+    public void test( double t ) throws SearchTimeout
+    {
+      this.t = t;
+      step();
+    }
+    /**
+     * Test as above, for a step which doesn't move the scan on, e.g. within a span
+     * being searched for intervals (which are stepped through forward whichever way
+     * the search is going).
+     */
+    void step() throws SearchTimeout
     {
-      if (System.currentTimeMillis() > timeoutAt)
+      if (task != null  &&  task.cancelled)
+        throw new SearchTimeout();
+      if (++nTests % CLOCK_CHECK_STEPS != 0)
+        return;
+      if (System.currentTimeMillis() > timeoutAt  ||  Thread.currentThread().isInterrupted())
         throw new SearchTimeout();
     }
   }
+  // number of steps a scan takes between looking at the clock
+  private static final int CLOCK_CHECK_STEPS = 16;
+  // precision of the times found for the beginning, end and peak of an event, in days
+  private static final double TIME_TOLERANCE = 1e-6;
+
   /**
    * Scan forward or backward for an event.
+   *
+   * The scan steps as far as the event is certain not to come or go (see
+   * Event.distance()), so it moves quickly while the event is far off.  The beginning
+   * and end are then solved for exactly, as is the peak for events which become
+   * exact.  For others the peak is where test() gives the lowest error.
    */
   public SearchResult search( double tStart, Event event, boolean forward, int maxExecutionTime ) throws SearchTimeout
   {
-    Timeout timeout = new Timeout( maxExecutionTime );
-    double dt = event.getTimeStep();
-    if (! forward)
-      dt = -dt;
-    double t = tStart;
+    Scan scan = newScan( event, tStart, forward, new Timeout( maxExecutionTime ) );
     // if the event is currently in effect, scan until it is no longer in effect
-    while (! Double.isNaN( event.test( t ) ))
+    scan.skipCurrent();
+    SearchResult result = scan.next( forward ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY );
+    if (result == null)
+      throw new SearchTimeout();
+    return result;
+  }
+
+  /**
+   * Find each time an event occurs, in order, as for search().  Occurrences which
+   * begin between tFrom and tTo are returned, searching backward if tTo is before
+   * tFrom.  Each one is found as it is asked for, carrying on the scan from the end
+   * of the one before.
+   */
+  public Iterator<SearchResult> searchAll( Event event, double tFrom, double tTo )
+  {
+    return searchAll( event, tFrom, tTo, Integer.MAX_VALUE );
+  }
+  /**
+   * Find each time an event occurs, up to a maximum number of occurrences.
+   */
+  public Iterator<SearchResult> searchAll( Event event, double tFrom, final double tTo, final int maxResults )
+  {
+    final boolean forward = (tTo >= tFrom);
+    final Scan scan = newScan( event, tFrom, forward, null );
+    return new Iterator<SearchResult>()
+    {
+      private SearchResult next;
+      private int nResults = 0;
+      private boolean started = false, done = false;
+      public boolean hasNext()
+      {
+        if (next == null  &&  ! done)
+        {
+          try
+          {
+            if (! started)
+              scan.skipCurrent();
+            started = true;
+            if (nResults < maxResults)
+              next = scan.next( tTo );
+          }
+          catch( SearchTimeout x )
+          {
+            // reached the ephemeris limits
+          }
+          if (next == null)
+            done = true;
+          else
+            nResults ++;
+        }
+        return next != null;
+      }
+      public SearchResult next()
+      {
+        if (! hasNext())
+          throw new NoSuchElementException();
+        SearchResult result = next;
+        next = null;
+        return result;
+      }
+      public void remove()
+      {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  // length of the spans of time searched at once by searchParallel(), in days
+  private static final double PARALLEL_SPAN = 3652.5;
+  // threads shared by parallel searches
+  private static ExecutorService searchThreads;
+
+  private static synchronized ExecutorService getSearchThreads()
+  {
+    if (searchThreads == null)
+    {
+      searchThreads = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+      {
+        public Thread newThread( Runnable r )
+        {
+          Thread thread = new Thread( r, "search" );
+          thread.setDaemon( true );
+          thread.setPriority( Thread.MIN_PRIORITY );
+          return thread;
+        }
+      } );
+    }
+    return searchThreads;
+  }
+  /**
+   * Search as for search(), using several threads.
+   */
+  public SearchResult searchParallel( double tStart, Event event, boolean forward, int maxExecutionTime ) throws SearchTimeout
+  {
+    return searchParallel( tStart, event, forward, maxExecutionTime, getSearchThreads() );
+  }
+  /**
+   * Search as for search(), using several threads.  The time from tStart to the
+   * limits of the ephemeris is split into spans which are searched at the same time,
+   * and the result from the earliest span (in the direction of the search) is
+   * returned.  This helps with rare events, for which a search can run for centuries.
+   */
+  public SearchResult searchParallel( double tStart, final Event event, final boolean forward, int maxExecutionTime, ExecutorService threads ) throws SearchTimeout
+  {
+    return searchParallel( tStart, event, forward, maxExecutionTime, threads, null );
+  }
+  /**
+   * Search in parallel, for a task which can be cancelled and which is told how
+   * the search is going while it waits for the spans.
+   */
+  private SearchResult searchParallel( double tStart, final Event event, final boolean forward, int maxExecutionTime, ExecutorService threads, SearchTask task ) throws SearchTimeout
+  {
+    long timeoutAt = System.currentTimeMillis() + maxExecutionTime;
+    double tLimit = forward ? ChartData.MAXIMUM_TIME : ChartData.MINIMUM_TIME;
+    double span = forward ? PARALLEL_SPAN : -PARALLEL_SPAN;
+    List<Future<SearchResult>> spans = new ArrayList<Future<SearchResult>>();
+    List<Timeout> timeouts = new ArrayList<Timeout>();
+    try
+    {
+      for (double t = tStart; forward ? (t < tLimit) : (t > tLimit); t += span)
+      {
+        final double tFrom = t;
+        final double tTo = forward ? Math.min( t + span, tLimit ) : Math.max( t + span, tLimit );
+        final Timeout timeout = new Timeout( timeoutAt, task, tFrom );
+        timeouts.add( timeout );
+        spans.add( threads.submit( new Callable<SearchResult>()
+        {
+          public SearchResult call() throws SearchTimeout
+          {
+            // an occurrence in effect at the start of the span belongs to an earlier one
+            Scan scan = newScan( event, tFrom, forward, timeout );
+            scan.skipCurrent();
+            return scan.next( tTo );
+          }
+        } ) );
+      }
+      long tReport = System.currentTimeMillis() + PROGRESS_INTERVAL;
+      for (int n=0; n < spans.size(); n++)
+      {
+        Future<SearchResult> result = spans.get( n );
+        while (task != null  &&  ! result.isDone()  &&  System.currentTimeMillis() < timeoutAt)
+        {
+          try
+          {
+            result.get( Math.max( tReport - System.currentTimeMillis(), 1 ), TimeUnit.MILLISECONDS );
+          }
+          catch( TimeoutException x )
+          {
+            // the earlier spans are done, so the search has got as far as this one
+            task.progress( tStart, tLimit, timeouts.get( n ).t );
+            tReport = System.currentTimeMillis() + PROGRESS_INTERVAL;
+          }
+        }
+        long msLeft = Math.max( timeoutAt - System.currentTimeMillis(), 0 );
+        SearchResult found = result.get( msLeft, TimeUnit.MILLISECONDS );
+        if (found != null)
+          return found;
+      }
+      // not found before the limits of the ephemeris
+      throw new SearchTimeout();
+    }
+    catch( TimeoutException x )
     {
-      timeout.test();
-      t += dt;
+      throw new SearchTimeout();
     }
-    // now scan until it *is* in effect and find the leading edge
-    while (Double.isNaN( event.test( t ) ))
+    catch( InterruptedException x )
     {
-      timeout.test();
-      if (! ChartData.isTimeWithinMaximumBounds( t ))
-        throw new SearchTimeout();
-      t += dt;
+      Thread.currentThread().interrupt();
+      throw new SearchTimeout();
     }
-    double tLeadingEdge = findEdge( t, t - dt, event );
-    // find the trailing edge (and keep track of lowest error value)
-    double tBest = t;
-    double errBest = event.test( t );
-    for (;;)
+    catch( ExecutionException x )
     {
-      double err = event.test( t );
-      if (Double.isNaN( err ))
-        break;
+      if (x.getCause() instanceof SearchTimeout)
+        throw (SearchTimeout)x.getCause();
+      if (x.getCause() instanceof RuntimeException)
+        throw (RuntimeException)x.getCause();
+      throw new RuntimeException( x.getCause() );
+    }
+    finally
+    {
+      // stop the spans after the one found
+      for (Future<SearchResult> result : spans)
+        result.cancel( true );
+    }
+  }
+
+  // time between progress reports, ms
+  private static final long PROGRESS_INTERVAL = 200;
+  // runs searches started with start(), one at a time
+  private static ExecutorService searchRunner;
+
+  private static synchronized ExecutorService getSearchRunner()
+  {
+    if (searchRunner == null)
+    {
+      searchRunner = Executors.newSingleThreadExecutor( new ThreadFactory()
+      {
+        public Thread newThread( Runnable r )
+        {
+          Thread thread = new Thread( r, "search runner" );
+          thread.setDaemon( true );
+          return thread;
+        }
+      } );
+    }
+    return searchRunner;
+  }
+
+  /**
+   * Receives news of a search started with start().  The calls are made on the
+   * thread running the search, and stop once it is cancelled.
+   */
+  public static interface SearchListener
+  {
+    /**
+     * How far the search has got: the fraction of the time from where it started to
+     * the limit of the ephemeris which has been searched, and the time reached.
+     */
+    public void progress( double fraction, double t );
+    public void found( SearchResult result );
+    /**
+     * The search timed out, or reached the limits of the ephemeris.
+     */
+    public void notFound();
+  }
+
+  /**
+   * A search running in the background.
+   */
+  public class SearchTask
+  {
+    private final SearchListener listener;
+    private volatile boolean cancelled = false;
+    private Future<?> running;
+    SearchTask( SearchListener listener )
+    {
+      this.listener = listener;
+    }
+    /**
+     * Stop the search.  The listener hears nothing more about it, and its threads
+     * stop at their next step.
+     */
+    public void cancel()
+    {
+      cancelled = true;
+      running.cancel( true );
+    }
+    public boolean isCancelled()
+    {
+      return cancelled;
+    }
+    public boolean isDone()
+    {
+      return running.isDone();
+    }
+    void progress( double tStart, double tLimit, double t )
+    {
+      if (! cancelled)
+        listener.progress( (t - tStart) / (tLimit - tStart), t );
+    }
+  }
+
+  /**
+   * Start searching as for searchParallel(), in the background.  The searches are
+   * run one at a time, so a search which is no longer wanted should be cancelled.
+   */
+  public SearchTask start( final double tStart, final Event event, final boolean forward, final int maxExecutionTime, final SearchListener listener )
+  {
+    final SearchTask task = new SearchTask( listener );
+    task.running = getSearchRunner().submit( new Runnable()
+    {
+      public void run()
+      {
+        try
+        {
+          SearchResult result = searchParallel( tStart, event, forward, maxExecutionTime, getSearchThreads(), task );
+          if (! task.cancelled)
+            listener.found( result );
+        }
+        catch( SearchTimeout x )
+        {
+          if (! task.cancelled)
+            listener.notFound();
+        }
+      }
+    } );
+    return task;
+  }
+
+  /**
+   * Start scanning for an event.  Combinations of events, and events whose times
+   * can be found directly, are found a span of time at a time.
+   */
+  private Scan newScan( Event event, double tStart, boolean forward, Timeout timeout )
+  {
+    if (event.isCombination()  ||  event.solvesIntervals())
+      return new IntervalScan( event, tStart, forward, timeout );
+    return new Scan( event, tStart, forward, timeout );
+  }
+
+  /**
+   * The state of a scan for an event, which carries on from one occurrence to the
+   * next.
+   */
+  private class Scan
+  {
+    protected final Event event;
+    protected final boolean forward;
+    private final double dir, minStep;
+    private final double step[] = new double[1];
+    protected final Timeout timeout;
+    // current time and distance from the event
+    protected double t, d;
+    Scan( Event event, double tStart, boolean forward, Timeout timeout )
+    {
+      this.event = event;
+      this.forward = forward;
+      this.timeout = timeout;
+      dir = forward ? 1 : -1;
+      minStep = event.getTimeStep() * MIN_STEP;
+      t = tStart;
+      d = event.distance( t, forward, step );
+    }
+    private void advance() throws SearchTimeout
+    {
+      if (timeout != null)
+        timeout.test( t );
+      t += dir * Math.max( step[0], minStep );
+      d = event.distance( t, forward, step );
+    }
+    /**
+     * Move past any occurrence in effect now.
+     */
+    void skipCurrent() throws SearchTimeout
+    {
+      while (d <= 0)
+        advance();
+    }
+    /**
+     * Find the next occurrence, or return null if it doesn't begin before tLimit.
+     */
+    SearchResult next( double tLimit ) throws SearchTimeout
+    {
+      // scan until the event *is* in effect and find the leading edge
+      double tOut, dOut;
+      do
+      {
+        if (forward ? (t > tLimit) : (t < tLimit))
+          return null;
+        if (! ChartData.isTimeWithinMaximumBounds( t ))
+          throw new SearchTimeout();
+        tOut = t;
+        dOut = d;
+        advance();
+      }
+      while (! (d <= 0));
+      double tLeadingEdge = findEdge( event, tOut, dOut, t, d );
+      if (forward ? (tLeadingEdge > tLimit) : (tLeadingEdge < tLimit))
+        return null;
+      // find the trailing edge, keeping track of where the event becomes exact, or of
+      // the lowest error value and the times either side of it
+      Peak peak = new Peak( event, tLeadingEdge );
+      double tIn, dIn;
+      do
+      {
+        peak.sample( t );
+        tIn = t;
+        dIn = d;
+        advance();
+      }
+      while (d <= 0);
+      double tTrailingEdge = findEdge( event, t, d, tIn, dIn );
+      peak.sample( tTrailingEdge );
+      SearchResult result = new SearchResult();
+      result.tPeak = peak.solve();
+      result.tStart = forward ? tLeadingEdge : tTrailingEdge;
+      result.tEnd = forward ? tTrailingEdge : tLeadingEdge;
+      return result;
+    }
+  }
+
+  // length of the spans of time searched at once for combinations of events, as a
+  // multiple of getIntervalTimeStep().  Spans start short, and grow while nothing is found.
+  private static final double INTERVAL_WINDOW = 10;
+  private static final double MAX_INTERVAL_WINDOW = 1000;
+  // number of times sampled for the peak of a combination of events
+  private static final int PEAK_SAMPLES = 8;
+
+  /**
+   * Scan for a combination of events.  The times when it is in effect are found for
+   * a span of time at a time (see Event.findIntervals()), and joined up where they
+   * run from one span into the next.
+   */
+  private class IntervalScan extends Scan
+  {
+    private final double minWindow, maxWindow;
+    private double window;
+    // intervals found in the latest span, how many have been used, and the far end
+    // of the span in the direction of the search
+    private Intervals found = new Intervals();
+    private int nUsed = 0;
+    private final double tStart;
+    private double tFar;
+    IntervalScan( Event event, double tStart, boolean forward, Timeout timeout )
+    {
+      super( event, tStart, forward, timeout );
+      minWindow = window = event.getIntervalTimeStep() * INTERVAL_WINDOW;
+      maxWindow = event.getIntervalTimeStep() * MAX_INTERVAL_WINDOW;
+      this.tStart = tFar = tStart;
+    }
+    void skipCurrent() throws SearchTimeout
+    {
+      // go by the intervals rather than by distance(), which can disagree with them
+      // right at an edge, e.g. when a search starts from the end of the last result
+      // - one in effect now is in the first span
+      double[] first = takeInterval( tStart );
+      if (first == null)
+        return;
+      nUsed --;
+      if (forward ? (first[0] <= tStart) : (first[1] >= tStart))
+        nextInterval( forward ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY );
+    }
+    SearchResult next( double tLimit ) throws SearchTimeout
+    {
+      double[] interval = nextInterval( tLimit );
+      if (interval == null)
+        return null;
+      double tLeadingEdge = forward ? interval[0] : interval[1];
+      double tTrailingEdge = forward ? interval[1] : interval[0];
+      if (forward ? (tLeadingEdge > tLimit) : (tLeadingEdge < tLimit))
+        return null;
+      return describe( event, interval[0], interval[1], forward );
+    }
+    /**
+     * Find the next whole interval, or return null if the search passes tLimit
+     * first.
+     */
+    private double[] nextInterval( double tLimit ) throws SearchTimeout
+    {
+      double[] interval = takeInterval( tLimit );
+      if (interval == null)
+        return null;
+      // join on the intervals which carry on from the end of a span
+      double noLimit = forward ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+      while ((forward ? interval[1] : interval[0]) == tFar  &&  nUsed == found.size())
+      {
+        double tJoin = tFar;
+        double[] more = takeInterval( noLimit );
+        if ((forward ? more[0] : more[1]) != tJoin)
+        {
+          nUsed --;
+          break;
+        }
+        if (forward)
+          interval[1] = more[1];
+        else
+          interval[0] = more[0];
+      }
+      return interval;
+    }
+    /**
+     * Take the next interval in the direction of the search, searching the next span
+     * when needed.
+     */
+    private double[] takeInterval( double tLimit ) throws SearchTimeout
+    {
+      while (nUsed == found.size())
+      {
+        if (forward ? (tFar > tLimit) : (tFar < tLimit))
+          return null;
+        if (! ChartData.isTimeWithinMaximumBounds( tFar ))
+          throw new SearchTimeout();
+        if (timeout != null)
+          timeout.test( tFar );
+        double tNear = tFar;
+        tFar += forward ? window : -window;
+        found = forward ? event.findIntervals( tNear, tFar, timeout ) : event.findIntervals( tFar, tNear, timeout );
+        nUsed = 0;
+        window = (found.size() == 0) ? Math.min( window * 2, maxWindow ) : minWindow;
+      }
+      int n = forward ? nUsed : found.size() - 1 - nUsed;
+      nUsed ++;
+      return new double[] { found.start( n ), found.end( n ) };
+    }
+  }
+
+  /**
+   * Describe an occurrence of an event from the times it begins and ends, finding
+   * its peak from samples taken across it in the direction of the search.
+   */
+  private SearchResult describe( Event event, double tStart, double tEnd, boolean forward )
+  {
+    double tLeadingEdge = forward ? tStart : tEnd;
+    double tTrailingEdge = forward ? tEnd : tStart;
+    Peak peak = new Peak( event, tLeadingEdge );
+    for (int n=1; n <= PEAK_SAMPLES; n++)
+      peak.sample( tLeadingEdge + (tTrailingEdge - tLeadingEdge) * n / PEAK_SAMPLES );
+    SearchResult result = new SearchResult();
+    result.tPeak = peak.solve();
+    result.tStart = tStart;
+    result.tEnd = tEnd;
+    return result;
+  }
+
+  /**
+   * Keeps track of the peak of an event from a series of times within it.
+   */
+  private class Peak
+  {
+    private final Curve error;
+    private final boolean exact;
+    private double tPrev, xPrev;
+    // times around a change of sign in exactness()
+    private double tExactA = Double.NaN, tExactB;
+    private double xExactA, xExactB;
+    // lowest error so far, and the times either side of it
+    private double tBest, errBest = Double.POSITIVE_INFINITY;
+    private double tBefore, tAfter = Double.NaN;
+    Peak( final Event event, double tEdge )
+    {
+      exactness = new Curve()
+      {
+        public double at( double t )
+        {
+          return event.exactness( t );
+        }
+      };
+      xPrev = exactness.at( tEdge );
+      exact = ! Double.isNaN( xPrev );
+      error = new Curve()
+      {
+        public double at( double t )
+        {
+          double err = exact ? Math.abs( event.exactness( t ) ) : event.test( t );
+          return Double.isNaN( err ) ? Double.POSITIVE_INFINITY : err;
+        }
+      };
+      tPrev = tEdge;
+      record( tEdge, exact ? Math.abs( xPrev ) : error.at( tEdge ) );
+    }
+    private final Curve exactness;
+    /**
+     * Take the next time, in the order of the search.
+     */
+    void sample( double t )
+    {
+      if (exact)
+      {
+        // once it is known to become exact, nothing more is needed
+        if (! Double.isNaN( tExactA ))
+          return;
+        double x = exactness.at( t );
+        if ((x <= 0) != (xPrev <= 0))
+        {
+          tExactA = tPrev;
+          xExactA = xPrev;
+          tExactB = t;
+          xExactB = x;
+        }
+        record( t, Math.abs( x ) );
+        xPrev = x;
+      }
+      else
+        record( t, error.at( t ) );
+      tPrev = t;
+    }
+    private void record( double t, double err )
+    {
+      if (Double.isNaN( tAfter ))
+        tAfter = t;
       if (err < errBest)
       {
-        tBest = t;
         errBest = err;
+        tBefore = tPrev;
+        tBest = t;
+        tAfter = Double.NaN;
+      }
+    }
+    /**
+     * Find the time of the peak.
+     */
+    double solve()
+    {
+      if (! Double.isNaN( tExactA ))
+        return findRoot( exactness, tExactA, xExactA, tExactB, xExactB );
+      if (Double.isNaN( tAfter ))
+        tAfter = tBest;
+      return minimize( error, Math.min( tBefore, tAfter ), Math.max( tBefore, tAfter ) );
+    }
+  }
+
+  /**
+   * A function of time, for finding roots and minima.
+   */
+  private interface Curve
+  {
+    double at( double t );
+  }
+
+  /**
+   * Find the point where an event transitions from in range to out of range.  The
+   * time returned is in range.
+   */
+  private double findEdge( final Event event, double tOut, double dOut, double tIn, double dIn )
+  {
+    Curve distance = new Curve()
+    {
+      public double at( double t )
+      {
+        return event.distance( t );
+      }
+    };
+    double t = findRoot( distance, tOut, dOut, tIn, dIn );
+    if (! (event.distance( t ) <= 0))
+      t += (tIn > tOut) ? TIME_TOLERANCE : -TIME_TOLERANCE;
+    return t;
+  }
+
+  /**
+   * Find where a function passes through zero between two times where it has
+   * opposite signs, using Brent's method.
+   */
+  private static double findRoot( Curve f, double a, double fa, double b, double fb )
+  {
+    double c = a, fc = fa;
+    double d = b - a, e = d;
+    for (int nIter=0; nIter < 100; nIter++)
+    {
+      if ((fb > 0) == (fc > 0))
+      {
+        c = a;
+        fc = fa;
+        d = e = b - a;
       }
-      t += dt;
-    }
-    double tTrailingEdge = findEdge( t - dt, t, event );
-    // now find the peak (lowest error) within this range
-    double tA = tBest - dt;
-    double tB = tBest + dt;
-    /*
-    if (forward  &&  tA < tLeadingEdge)
-      tA = tLeadingEdge;
-    if (forward  &&  tB > tTrailingEdge)
-      tB = tTrailingEdge;
-    if (! forward  &&  tA > tLeadingEdge)
-      tA = tLeadingEdge;
-    if (! forward  &&  tB < tLeadingEdge)
-      tB = tTrailingEdge;
-    */
-    for (int nIter=0; nIter < 10; nIter++)
-    {
-      double tM = (tA + tB) / 2;
-      double tL = (tA*3 + tB) / 4;
-      double errL = event.test( tL );
-      if (! Double.isNaN( errL )  &&  errL < errBest)
-      {
-        tB = tM;
-        errBest = errL;
+      if (Math.abs( fc ) < Math.abs( fb ))
+      {
+        a = b;  b = c;  c = a;
+        fa = fb;  fb = fc;  fc = fa;
       }
-      else
+      double tol = TIME_TOLERANCE / 2;
+      double m = (c - b) / 2;
+      if (Math.abs( m ) <= tol  ||  fb == 0)
+        break;
+      if (Math.abs( e ) >= tol  &&  Math.abs( fa ) > Math.abs( fb ))
       {
-        double tR = (tA + tB*3)/4;
-        double errR = event.test( tR );
-        if (! Double.isNaN( errR )  &&  errR < errBest)
+        // interpolate
+        double p, q, s = fb / fa;
+        if (a == c)
         {
-          tA = tM;
-          errBest = errR;
+          p = 2 * m * s;
+          q = 1 - s;
         }
         else
         {
-          tA = tL;
-          tB = tR;
+          double r = fb / fc;
+          q = fa / fc;
+          p = s * (2 * m * q * (q - r) - (b - a) * (r - 1));
+          q = (q - 1) * (r - 1) * (s - 1);
         }
+        if (p > 0)
+          q = -q;
+        else
+          p = -p;
+        if (2 * p < Math.min( 3 * m * q - Math.abs( tol * q ), Math.abs( e * q ) ))
+        {
+          e = d;
+          d = p / q;
+        }
+        else
+          d = e = m;
       }
+      else
+        // bisect
+        d = e = m;
+      a = b;
+      fa = fb;
+      b += (Math.abs( d ) > tol) ? d : ((m > 0) ? tol : -tol);
+      fb = f.at( b );
     }
-    tBest = (tA + tB)/2;
-    SearchResult result = new SearchResult();
-    result.tPeak = tBest;
-    result.tStart = forward ? tLeadingEdge : tTrailingEdge;
-    result.tEnd = forward ? tTrailingEdge : tLeadingEdge;
-    return result;
+    return b;
   }
-  
+
   /**
-   * Find the point where an event transitions from in range to out of range.
+   * Find the lowest value of a function between two times, using Brent's method.
    */
-  private double findEdge( double tIn, double tOut, Event event )
+  private static double minimize( Curve f, double a, double b )
   {
-    double t = 0;
-    for (int nIter=0; nIter < 10; nIter++)
+    final double golden = (3 - Math.sqrt( 5 )) / 2;
+    double x = a + golden * (b - a);
+    double w = x, v = x;
+    double fx = f.at( x ), fw = fx, fv = fx;
+    double d = 0, e = 0;
+    for (int nIter=0; nIter < 100; nIter++)
     {
-      t = (tIn + tOut)/2;
-      if (Double.isNaN( event.test( t ) ))
-        tOut = t;
+      double m = (a + b) / 2;
+      double tol = TIME_TOLERANCE / 2;
+      if (Math.abs( x - m ) <= 2 * tol - (b - a) / 2)
+        break;
+      boolean useGolden = true;
+      if (Math.abs( e ) > tol)
+      {
+        // fit a parabola
+        double r = (x - w) * (fx - fv);
+        double q = (x - v) * (fx - fw);
+        double p = (x - v) * q - (x - w) * r;
+        q = 2 * (q - r);
+        if (q > 0)
+          p = -p;
+        else
+          q = -q;
+        if (Math.abs( p ) < Math.abs( q * e / 2 )  &&  p > q * (a - x)  &&  p < q * (b - x))
+        {
+          e = d;
+          d = p / q;
+          double u = x + d;
+          if (u - a < 2 * tol  ||  b - u < 2 * tol)
+            d = (x < m) ? tol : -tol;
+          useGolden = false;
+        }
+      }
+      if (useGolden)
+      {
+        e = (x < m) ? b - x : a - x;
+        d = golden * e;
+      }
+      double u = x + ((Math.abs( d ) >= tol) ? d : ((d > 0) ? tol : -tol));
+      double fu = f.at( u );
+      if (fu <= fx)
+      {
+        if (u < x)
+          b = x;
+        else
+          a = x;
+        v = w;  fv = fw;
+        w = x;  fw = fx;
+        x = u;  fx = fu;
+      }
       else
-        tIn = t;
+      {
+        if (u < x)
+          a = u;
+        else
+          b = u;
+        if (fu <= fw  ||  w == x)
+        {
+          v = w;  fv = fw;
+          w = u;  fw = fu;
+        }
+        else if (fu <= fv  ||  v == x  ||  v == w)
+        {
+          v = u;  fv = fu;
+        }
+      }
     }
-    return t;
+    return x;
   }
 
+  /**
+   * A transiting planet in aspect to a point in a natal chart, found by
+   * searchTransits().
+   */
+  public static class Transit
+  {
+    // which chart, and which of its points, by their places in the lists given
+    public int chart, point;
+    // name of the transiting planet
+    public String planet;
+    // the aspect, radians
+    public double aspect;
+    // when it is within orb, and when it is exact
+    public SearchResult when;
+    public String toString()
+    {
+      return planet + " " + Math.round( Math.toDegrees( aspect ) ) + " point " + point + " " + when;
+    }
+  }
+  /**
+   * Receives the transits found by searchTransits().
+   */
+  public static interface TransitListener
+  {
+    /**
+     * All the transits to one chart, in order of when they begin.  The charts are
+     * reported in order, on the thread which called searchTransits().
+     */
+    public void transits( int chart, List<Transit> transits );
+  }
+
+  /**
+   * The positions of a transiting planet at regular times, shared by all the charts
+   * searchTransits() looks at.
+   */
+  private class TransitSamples
+  {
+    final int planet;
+    final String name;
+    final double[] t, pos;
+    // how far the planet can stray from the arc between two samples, radians
+    final double margin;
+    TransitSamples( int planet, String name, double tFrom, double tTo )
+    {
+      this.planet = planet;
+      this.name = name;
+      double step = getTimeStepForPlanet( planet ) * TRANSIT_SAMPLE_STEP;
+      int nSamples = (int)Math.ceil( (tTo - tFrom) / step ) + 1;
+      t = new double[ nSamples ];
+      for (int n=0; n < nSamples; n++)
+        t[n] = Math.min( tFrom + n * step, tTo );
+      pos = new double[ nSamples ];
+      getPlanetPos( planet, t, pos );
+      // it can curve away from a straight line, and can't get further than halfway
+      // from the nearer of the two
+      margin = Math.min( getMaxAcceleration( planet ) * step * step / 8, getMaxSpeed( planet ) * step / 2 ) + POSITION_TOLERANCE;
+    }
+  }
+  // time between samples of transiting planets, as a fraction of their time steps
+  private static final double TRANSIT_SAMPLE_STEP = 1;
+
+  /**
+   * Find the transits to many natal charts at once, i.e. the times when the named
+   * transiting planets are in aspect to the points of each chart.  This is for
+   * looking up transits for many people: the transiting planets are sampled once,
+   * for all of them, and the aspects to each chart are found by looking for the
+   * targets (natal points plus or minus each aspect) which the sampled positions
+   * pass near.  Only where a planet passes near one is the transit worked out
+   * exactly, as for searchAll().
+   *
+   * Transits in effect at tFrom or tTo are cut off there.
+   *
+   * @param natal     positions of the points in each chart, radians
+   * @param planets   names of the transiting planets
+   * @param aspects   aspects to look for, radians
+   * @param orbs      orb for each aspect, radians
+   * @param listener  receives the transits for each chart in turn
+   */
+  public void searchTransits( final double[][] natal, String[] planets, final double[] aspects, final double[] orbs, double tFrom, double tTo, TransitListener listener )
+  {
+    int[] transiting = new int[ planets.length ];
+    for (int n=0; n < planets.length; n++)
+    {
+      transiting[n] = getPlanetNumber( planets[n] );
+      if (transiting[n] < 0)
+        throw new IllegalArgumentException( "unknown planet: " + planets[n] );
+    }
+    final TransitSamples[] samples = new TransitSamples[ planets.length ];
+    for (int n=0; n < planets.length; n++)
+      samples[n] = new TransitSamples( transiting[n], planets[n], tFrom, tTo );
+    List<Future<List<Transit>>> charts = new ArrayList<Future<List<Transit>>>( natal.length );
+    try
+    {
+      for (int c=0; c < natal.length; c++)
+      {
+        final int chart = c;
+        charts.add( getSearchThreads().submit( new Callable<List<Transit>>()
+        {
+          public List<Transit> call()
+          {
+            return findTransits( chart, natal[ chart ], samples, aspects, orbs );
+          }
+        } ) );
+      }
+      for (int c=0; c < natal.length; c++)
+        listener.transits( c, await( charts.get( c ) ) );
+    }
+    finally
+    {
+      for (Future<List<Transit>> chart : charts)
+        chart.cancel( true );
+    }
+  }
+  /**
+   * Find the transits to one chart.
+   */
+  private List<Transit> findTransits( int chart, double[] points, TransitSamples[] samples, double[] aspects, double[] orbs )
+  {
+    // the targets are the places where a transiting planet would be in aspect to a
+    // point, sorted so that the ones near a position can be found quickly
+    int nTargets = 0;
+    double[][] targets = new double[ points.length * aspects.length * 2 ][];
+    double maxOrb = 0;
+    for (int a=0; a < aspects.length; a++)
+    {
+      maxOrb = Math.max( maxOrb, orbs[a] );
+      for (int p=0; p < points.length; p++)
+      {
+        targets[ nTargets++ ] = new double[] { ChartData.mod2pi( points[p] + aspects[a] ), p, a };
+        // conjunctions and oppositions can only be made one way
+        if (aspects[a] > 0  &&  aspects[a] < Math.PI)
+          targets[ nTargets++ ] = new double[] { ChartData.mod2pi( points[p] - aspects[a] ), p, a };
+      }
+    }
+    targets = Arrays.copyOf( targets, nTargets );
+    Arrays.sort( targets, new Comparator<double[]>()
+    {
+      public int compare( double[] t1, double[] t2 )
+      {
+        return Double.compare( t1[0], t2[0] );
+      }
+    } );
+    double[] sorted = new double[ nTargets ];
+    for (int n=0; n < nTargets; n++)
+      sorted[n] = targets[n][0];
+    List<Transit> found = new ArrayList<Transit>();
+    // the run of samples each target is passed near in, if any
+    int[] runStart = new int[ nTargets ];
+    int[] runEnd = new int[ nTargets ];
+    for (TransitSamples planet : samples)
+    {
+      Arrays.fill( runStart, -1 );
+      for (int n=0; n+1 < planet.t.length; n++)
+      {
+        // arc covered between two samples, widened by the orb
+        double move = signedDiff( planet.pos[n+1], planet.pos[n] );
+        double reach = planet.margin + maxOrb;
+        double from = planet.pos[n] + Math.min( move, 0 ) - reach;
+        double width = Math.abs( move ) + 2*reach;
+        int k = lowerBound( sorted, ChartData.mod2pi( from ) );
+        for (int i=0; i < nTargets; i++, k++)
+        {
+          if (k == nTargets)
+            k = 0;
+          double into = ChartData.mod2pi( sorted[k] - from );
+          if (into > width)
+            break;
+          // the target's own orb may be smaller
+          double orb = orbs[ (int)targets[k][2] ];
+          if (into < maxOrb - orb  ||  into > width - (maxOrb - orb))
+            continue;
+          if (runStart[k] >= 0  &&  runEnd[k] == n)
+            runEnd[k] = n + 1;
+          else
+          {
+            if (runStart[k] >= 0)
+              addTransits( found, chart, planet, targets[k], points, aspects, orbs, runStart[k], runEnd[k] );
+            runStart[k] = n;
+            runEnd[k] = n + 1;
+          }
+        }
+      }
+      for (int k=0; k < nTargets; k++)
+        if (runStart[k] >= 0)
+          addTransits( found, chart, planet, targets[k], points, aspects, orbs, runStart[k], runEnd[k] );
+    }
+    Collections.sort( found, new Comparator<Transit>()
+    {
+      public int compare( Transit t1, Transit t2 )
+      {
+        return Double.compare( t1.when.tStart, t2.when.tStart );
+      }
+    } );
+    return found;
+  }
+  /**
+   * Work out the transits to a target during a run of samples in which the
+   * transiting planet passes near it.
+   */
+  private void addTransits( List<Transit> found, int chart, TransitSamples planet, double[] target, double[] points, double[] aspects, double[] orbs, int nFrom, int nTo )
+  {
+    int point = (int)target[1];
+    int aspect = (int)target[2];
+    Event event = new AspectPoint( planet.planet, points[ point ], aspects[ aspect ], orbs[ aspect ] );
+    Intervals in = event.findIntervals( planet.t[ nFrom ], planet.t[ nTo ] );
+    for (int n=0; n < in.size(); n++)
+    {
+      Transit transit = new Transit();
+      transit.chart = chart;
+      transit.point = point;
+      transit.planet = planet.name;
+      transit.aspect = aspects[ aspect ];
+      transit.when = describe( event, in.start( n ), in.end( n ), true );
+      found.add( transit );
+    }
+  }
+  /**
+   * Index of the first value in a sorted array which is at least x, or the length
+   * of the array if there isn't one.
+   */
+  private static int lowerBound( double[] sorted, double x )
+  {
+    int n = Arrays.binarySearch( sorted, x );
+    if (n < 0)
+      return -n - 1;
+    while (n > 0  &&  sorted[n-1] == x)
+      n --;
+    return n;
+  }
+
+  // number of samples tested at a time by calculateFrequency(), and in each stratum
+  // by estimateFrequency()
+  private static final int FREQUENCY_BLOCK = 4096;
+
   /**
    * Calculate how often an event occurs during a period of time, using random sampling.
    */
   public double calculateFrequency( Event event, double tLow, double tHigh, int nSamples, double maxOrb )
   {
-    int hits = 0;
-    double range = tHigh - tLow;
-    Random rnd = new Random();
-    for (int nSample=0; nSample < nSamples; nSample++)
+    return estimateFrequency( event, tLow, tHigh, nSamples, maxOrb, new Random().nextLong() ).frequency;
+  }
+
+  /**
+   * Estimated frequency of an event.
+   */
+  public static class FrequencyEstimate
+  {
+    /**
+     * Fraction of the time the event is in effect.
+     */
+    public double frequency;
+    /**
+     * Standard error of the estimate, and the 95% confidence interval.  The error is
+     * 0 for exact calculations.
+     */
+    public double standardError;
+    public double low, high;
+    public String toString()
+    {
+      return frequency*100 + " % (" + low*100 + " - " + high*100 + " %)";
+    }
+  }
+
+  /**
+   * Estimate how often an event occurs during a period of time, from samples which
+   * are counted if test() gives less than maxOrb.
+   *
+   * The period is divided into equal strata with a block of samples in each, which
+   * are tested on several threads.  Each stratum has its own random numbers derived
+   * from the seed, so the same seed gives the same result however the work is
+   * shared out.
+   */
+  public FrequencyEstimate estimateFrequency( final Event event, double tLow, double tHigh, int nSamples, final double maxOrb, long seed )
+  {
+    final int nStrata = Math.max( 1, (nSamples + FREQUENCY_BLOCK - 1) / FREQUENCY_BLOCK );
+    final double width = (tHigh - tLow) / nStrata;
+    List<Future<Integer>> strata = new ArrayList<Future<Integer>>();
+    int[] size = new int[ nStrata ];
+    for (int k=0; k < nStrata; k++)
+    {
+      final int nInStratum = nSamples / nStrata + ((k < nSamples % nStrata) ? 1 : 0);
+      final double tStratum = tLow + k * width;
+      final long stratumSeed = seed + k * 0x9E3779B97F4A7C15L;
+      size[k] = nInStratum;
+      strata.add( getSearchThreads().submit( new Callable<Integer>()
+      {
+        public Integer call()
+        {
+          Random rnd = new Random( stratumSeed );
+          double t[] = new double[ nInStratum ];
+          double orb[] = new double[ nInStratum ];
+          for (int n=0; n < t.length; n++)
+            t[n] = tStratum + rnd.nextDouble() * width;
+          // sorted so that positions are looked up in batches
+          Arrays.sort( t );
+          event.test( t, orb );
+          int hits = 0;
+          for (int n=0; n < t.length; n++)
+            if (orb[n] < maxOrb)
+              hits ++;
+          return hits;
+        }
+      } ) );
+    }
+    // the strata are the same width, so the estimate is the mean of their fractions
+    double sum = 0, variance = 0;
+    for (int k=0; k < nStrata; k++)
+    {
+      if (size[k] == 0)
+        continue;
+      double p = (double)await( strata.get( k ) ) / size[k];
+      sum += p;
+      if (size[k] > 1)
+        variance += p * (1 - p) / (size[k] - 1);
+    }
+    FrequencyEstimate estimate = new FrequencyEstimate();
+    estimate.frequency = sum / nStrata;
+    estimate.standardError = Math.sqrt( variance ) / nStrata;
+    estimate.low = Math.max( 0, estimate.frequency - 1.96 * estimate.standardError );
+    estimate.high = Math.min( 1, estimate.frequency + 1.96 * estimate.standardError );
+    return estimate;
+  }
+
+  /**
+   * Calculate exactly how often an event is in effect during a period of time, by
+   * adding up how long each occurrence lasts (see Event.findIntervals()).  Unlike
+   * sampling, there is no extra limit on the orb.  Spans of the period are searched
+   * on several threads.
+   */
+  public FrequencyEstimate calculateExactFrequency( final Event event, double tLow, double tHigh )
+  {
+    int nSpans = 4 * Runtime.getRuntime().availableProcessors();
+    double width = (tHigh - tLow) / nSpans;
+    List<Future<Double>> spans = new ArrayList<Future<Double>>();
+    for (int k=0; k < nSpans; k++)
+    {
+      final double tFrom = tLow + k * width;
+      final double tTo = (k == nSpans - 1) ? tHigh : tFrom + width;
+      spans.add( getSearchThreads().submit( new Callable<Double>()
+      {
+        public Double call()
+        {
+          Intervals found = event.findIntervals( tFrom, tTo );
+          double total = 0;
+          for (int n=0; n < found.size(); n++)
+            total += found.end( n ) - found.start( n );
+          return total;
+        }
+      } ) );
+    }
+    double total = 0;
+    for (Future<Double> span : spans)
+      total += await( span );
+    FrequencyEstimate estimate = new FrequencyEstimate();
+    estimate.frequency = estimate.low = estimate.high = total / (tHigh - tLow);
+    return estimate;
+  }
+
+  /**
+   * Wait for a result from the search threads.
+   */
+  private static <T> T await( Future<T> result )
+  {
+    try
+    {
+      return result.get();
+    }
+    catch( InterruptedException x )
+    {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException( x );
+    }
+    catch( ExecutionException x )
     {
-      double t = tLow + rnd.nextDouble() * range;
-      double orb = event.test( t );
-      if (orb < maxOrb)
-        hits ++;
+      if (x.getCause() instanceof RuntimeException)
+        throw (RuntimeException)x.getCause();
+      throw new RuntimeException( x.getCause() );
     }
-    return (double)hits / nSamples;
   }
   
   public static void main( String[] args )
@@ -668,8 +2657,11 @@ public class Search
       long tRange = (long)(70*365.25*86400000);
       double maxOrb = 4 * ChartWheel.d2r;
       int nSamples = 200000;
-      double freq = s.calculateFrequency( event, ChartWheel.systemTime_to_JD( tNow - tRange ), ChartWheel.systemTime_to_JD( tNow + tRange ), nSamples, maxOrb );
-      System.out.println( freq*100 + " %  (1 in " + 1/freq + ")" );
+      double tLow = ChartWheel.systemTime_to_JD( tNow - tRange ), tHigh = ChartWheel.systemTime_to_JD( tNow + tRange );
+      FrequencyEstimate sampled = s.estimateFrequency( event, tLow, tHigh, nSamples, maxOrb, 1 );
+      System.out.println( "sampled: " + sampled + "  (1 in " + 1/sampled.frequency + ")" );
+      FrequencyEstimate exact = s.calculateExactFrequency( event, tLow, tHigh );
+      System.out.println( "exact, within the aspects' orbs: " + exact + "  (1 in " + 1/exact.frequency + ")" );
     }
     catch( Exception x )
     {
@@ -21,8 +21,9 @@ import javax.swing.KeyStroke;
 
 import com.marklipson.astrologyclock.Search.Event;
 import com.marklipson.astrologyclock.Search.SearchParseException;
+import com.marklipson.astrologyclock.Search.SearchListener;
 import com.marklipson.astrologyclock.Search.SearchResult;
-import com.marklipson.astrologyclock.Search.SearchTimeout;
+import com.marklipson.astrologyclock.Search.SearchTask;
 
 /**
  * Controls for searching for planetary events.
@@ -34,6 +35,8 @@ public class SearchPanel extends JPanel
   private TimeAdjuster timeAdjuster;
   private ChartWheel.PlanetRing ring;
   private Search searcher;
+  // search in progress, if any
+  private SearchTask searching;
   
   private JTextField searchField;
   private JTextField message;
@@ -44,7 +47,6 @@ public class SearchPanel extends JPanel
   {
     this.timeAdjuster = timeAdjuster;
     ring = forRing;
-    searcher = new Search( ring );
     // colors
     setBorder( BorderFactory.createLineBorder( Color.LIGHT_GRAY ) );
     setBackground( new Color(224,224,224) );
@@ -121,6 +123,8 @@ public class SearchPanel extends JPanel
   {
     try
     {
+      // pick up the chart's current settings
+      searcher = new Search( ring );
       Event event = searcher.parseSearch( searchField.getText() );
       return event;
     }
@@ -142,25 +146,30 @@ public class SearchPanel extends JPanel
   }
   private void search( final Event event, final boolean forward )
   {
+    // a new search replaces any that is still going
+    if (searching != null)
+      searching.cancel();
     setMessage( "Searching..." );
-    new Thread() {
-      public void run() {
-        try
-        {
-          SearchResult result = searcher.search( ring.t, event, forward, 10000 );
-          String msg =
-            ring.getChartWheel().formatJD( result.tPeak, false ) + " (" +
-            ring.getChartWheel().formatJD( result.tStart, true ) + " to " +
-            ring.getChartWheel().formatJD( result.tEnd, true ) + ")";
-          setMessage( msg );
-          timeAdjuster.setTime( new Date( ChartWheel.JD_to_systemTime( result.tPeak ) ) );
-        }
-        catch( SearchTimeout x )
-        {
-          setMessage( "Search timed out or reached ephemeris limits." );
-        }
+    searching = searcher.start( ring.t, event, forward, 10000, new SearchListener()
+    {
+      public void progress( double fraction, double t )
+      {
+        setMessage( "Searching... " + ring.getChartWheel().formatJD( t, true ) );
+      }
+      public void found( SearchResult result )
+      {
+        String msg =
+          ring.getChartWheel().formatJD( result.tPeak, false ) + " (" +
+          ring.getChartWheel().formatJD( result.tStart, true ) + " to " +
+          ring.getChartWheel().formatJD( result.tEnd, true ) + ")";
+        setMessage( msg );
+        timeAdjuster.setTime( new Date( ChartWheel.JD_to_systemTime( result.tPeak ) ) );
+      }
+      public void notFound()
+      {
+        setMessage( "Search timed out or reached ephemeris limits." );
       }
-    }.start();
+    } );
   }
   private void setMessage( String text )
   {
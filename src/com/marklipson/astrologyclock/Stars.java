@@ -7,12 +7,10 @@ import java.util.ArrayList;
  */
 public class Stars
 {
-    // there is a single instance
-    static private Stars instance;
-    static public synchronized Stars getInstance()
+    // there is a single instance - it is small, so it is created up front
+    static private final Stars instance = new Stars();
+    static public Stars getInstance()
     {
-        if (instance == null)
-            instance = new Stars();
         return instance;
     }
     
@@ -0,0 +1,62 @@
+package com.marklipson.astrologyclock;
+
+/**
+ * Start-up support for servers.
+ *
+ * Run with -Djastro.startup.profile=true to log how long each subsystem takes to
+ * initialize.  preload() initializes everything up front, so that the time is spent
+ * when the server starts rather than on the first request.
+ *
+ * Running this class with no arguments preloads everything and exits, which with
+ * profiling on shows where start-up time goes.  The class data sharing archive in
+ * build-startup.sh is recorded from Generator instead, which also draws a chart and
+ * so loads the drawing classes as well.
+ */
+public class Startup
+{
+  /**
+   * Whether to log initialization times.
+   */
+  static final boolean PROFILE = Boolean.getBoolean( "jastro.startup.profile" );
+
+  /**
+   * Log the time a subsystem took to initialize, when profiling.
+   *
+   * @param what  name of the subsystem
+   * @param t0    System.nanoTime() when it started
+   */
+  static void report( String what, long t0 )
+  {
+    if (PROFILE)
+      System.err.println( "startup: " + what + " " + (System.nanoTime() - t0) / 1000000 + " ms" );
+  }
+
+  /**
+   * Initialize everything, if it has not been already.
+   */
+  public static void preload()
+  {
+    preload( true );
+  }
+  /**
+   * Initialize the ephemeris and star list, and optionally the atlas and time zone
+   * list, if they have not been already.  Drawing charts needs only the first two.
+   */
+  public static void preload( boolean places )
+  {
+    long t0 = System.nanoTime();
+    Ephemeris.getInstance();
+    Stars.getInstance();
+    if (places)
+    {
+      MiniAtlas.getInstance();
+      TimeZoneTools.preload();
+    }
+    report( "all", t0 );
+  }
+
+  public static void main( String[] args )
+  {
+    preload();
+  }
+}
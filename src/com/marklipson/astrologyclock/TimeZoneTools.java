@@ -43,33 +43,49 @@ public class TimeZoneTools
     }
   }
 
-  static private List<TimeZone> timezones = new ArrayList<TimeZone>();
   static private Map<TimeZone,MiniAtlas.Entry> tzLocs = new HashMap<TimeZone,MiniAtlas.Entry>();
-  static
+  /**
+   * All the timezones we plan to use.  Enumerating them takes a while, so it is done
+   * the first time they are needed rather than when this class is loaded.
+   */
+  private static class Zones
   {
-    // pull out all the timezones we plan to use
-    String[] ids = TimeZone.getAvailableIDs();
-    for (String id : ids)
+    static final List<TimeZone> timezones = new ArrayList<TimeZone>();
+    static
     {
-      try
-      {
-        // skip some of the obscure or technical ones and just keep the geographic ones
-        if (id.startsWith( "Etc/" ))
-          continue;
-        if (id.startsWith( "Antarctica/" ))
-          continue;
-        if (id.length() == 7  &&  Character.isDigit( id.charAt( 3 ) ))
-          continue;
-        if (id.length() == 3)
-          continue;
-        TimeZone tz = TimeZone.getTimeZone( id );
-        timezones.add( tz );
-      }
-      catch( Exception x )
+      long t0 = System.nanoTime();
+      // pull out all the timezones we plan to use
+      String[] ids = TimeZone.getAvailableIDs();
+      for (String id : ids)
       {
+        try
+        {
+          // skip some of the obscure or technical ones and just keep the geographic ones
+          if (id.startsWith( "Etc/" ))
+            continue;
+          if (id.startsWith( "Antarctica/" ))
+            continue;
+          if (id.length() == 7  &&  Character.isDigit( id.charAt( 3 ) ))
+            continue;
+          if (id.length() == 3)
+            continue;
+          TimeZone tz = TimeZone.getTimeZone( id );
+          timezones.add( tz );
+        }
+        catch( Exception x )
+        {
+        }
       }
+      Startup.report( "timezones", t0 );
     }
   }
+  /**
+   * Enumerate the timezones now rather than on first use.
+   */
+  static public void preload()
+  {
+    Zones.timezones.size();
+  }
   /**
    * Find the atlas entry and physical location associated with a timezone.
    * For instance, America/Denver should map to Denver, CO
@@ -318,7 +334,7 @@ public class TimeZoneTools
     if (country != null)
     {
       // scan for a matching country-specific timezone
-      for (TimeZone tz : timezones)
+      for (TimeZone tz : Zones.timezones)
       {
         // check ID for $COUNTRY
         String tzId = tz.getID();
@@ -344,7 +360,7 @@ public class TimeZoneTools
     double z1 = Math.sin( atlasEntry.lat * ChartWheel.d2r );
     double bestD = 0;
     TimeZone bestTZ = null;
-    for (TimeZone tz : timezones)
+    for (TimeZone tz : Zones.timezones)
     {
       MiniAtlas.Entry tzEntry = getTimeZoneLocation( tz );
       if (tzEntry == null)
@@ -0,0 +1,40 @@
+package com.marklipson.astrotools;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.marklipson.astrologyclock.MiniAtlas;
+
+/**
+ * Write the atlas as a pre-parsed snapshot, which loads much faster than the text
+ * files.  The atlas is loaded the usual way, so there must not be an older snapshot
+ * on the class path when this runs (see build-startup.sh).
+ */
+public class AtlasSnapshot
+{
+    public static void main(String[] args)
+    {
+        if (args.length != 1)
+        {
+            System.err.println( "Usage: AtlasSnapshot atlas.bin" );
+            return;
+        }
+        try
+        {
+            OutputStream out = new FileOutputStream( args[0] );
+            try
+            {
+                MiniAtlas.getInstance().writeSnapshot( out );
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        catch( IOException x )
+        {
+            x.printStackTrace( System.err );
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.marklipson.astrotools;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import com.marklipson.astrologyclock.ChartData;
+import com.marklipson.astrologyclock.ChartWheel;
+import com.marklipson.astrologyclock.Ephemeris;
+import com.marklipson.astrologyclock.EventIndex;
+import com.marklipson.astrologyclock.Search;
+
+/**
+ * Build the catalog of events used by EventIndex, for 1600 to 2200.
+ *
+ * Ingresses and stations are found with Search, so that they match what it finds
+ * when it scans for "mars in ar" or "mars rx".  Exact aspects and lunar phases are
+ * found by sampling the positions and solving for where they line up.
+ *
+ * Searches use the catalog once it is on the class path, so there must not be an
+ * older one there when this runs (see build-events.sh).
+ */
+public class BuildEventIndex
+{
+    // 1600-01-01 to 2200-01-01
+    static final double T_FIRST = 2305447.5;
+    static final double T_LAST = 2524593.5;
+    // time between samples when looking for aspects and phases, days
+    static final double SAMPLE_STEP = 0.25;
+    // how exact a solution must be, radians
+    static final double EXACT = 1e-6;
+    // searches start this long before T_FIRST, so that they see the end of a
+    // retrograde period which has already begun, days
+    static final double LEAD_TIME = 365;
+
+    static final int[] BODIES = {
+        Ephemeris.SUN, Ephemeris.MOON, Ephemeris.MERCURY, Ephemeris.VENUS, Ephemeris.MARS,
+        Ephemeris.JUPITER, Ephemeris.SATURN, Ephemeris.URANUS, Ephemeris.NEPTUNE, Ephemeris.PLUTO
+    };
+    static final String[] NAMES = {
+        "sun", "moon", "mercury", "venus", "mars", "jupiter", "saturn", "uranus", "neptune", "pluto"
+    };
+    static final String[] SIGNS = {
+        "ar","ta","ge","ca","le","vi","li","sc","sa","cp","aq","pi"
+    };
+    static final int[] ASPECTS = { 0, 60, 90, 120, 180 };
+    static final int[] PHASES = { 0, 90, 180, 270 };
+
+    public static void main(String[] args)
+    {
+        if (args.length != 1)
+        {
+            System.err.println( "Usage: BuildEventIndex events.bin" );
+            return;
+        }
+        if (EventIndex.getInstance() != null)
+        {
+            System.err.println( "Remove the old event index from the class path first" );
+            return;
+        }
+        try
+        {
+            EventIndex index = new EventIndex( T_FIRST, T_LAST );
+            addIngressesAndStations( index );
+            addAspectsAndPhases( index );
+            OutputStream out = new BufferedOutputStream( new FileOutputStream( args[0] ), 65536 );
+            try
+            {
+                index.write( out );
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        catch( Exception x )
+        {
+            x.printStackTrace( System.err );
+        }
+    }
+
+    /**
+     * Search for each planet's ingresses into each sign, and for when it turns
+     * retrograde and direct.
+     */
+    static void addIngressesAndStations( EventIndex index ) throws Search.SearchParseException
+    {
+        ChartWheel chart = new ChartWheel( null, null );
+        Search search = new Search( chart.getMainRing() );
+        for (int p=0; p < BODIES.length; p++)
+        {
+            // where each planet starts out, as Search sees it
+            double pos = ChartData.geoLongitude( BODIES[p], T_FIRST );
+            index.add( EventIndex.INGRESS, BODIES[p], 0, T_FIRST, (int)Math.floor( pos / (Math.PI/6) ) );
+            if (BODIES[p] != Ephemeris.SUN  &&  BODIES[p] != Ephemeris.MOON)
+            {
+                boolean rx = signedDiff( ChartData.geoLongitude( BODIES[p], T_FIRST + 0.0005 ), pos ) <= 0;
+                index.add( EventIndex.STATION, BODIES[p], 0, T_FIRST, rx ? 1 : 0 );
+            }
+            for (int sign=0; sign < 12; sign++)
+            {
+                Search.Event event = search.parseSearch( NAMES[p] + " in " + SIGNS[sign] );
+                Iterator<Search.SearchResult> found = search.searchAll( event, T_FIRST - LEAD_TIME, T_LAST );
+                while (found.hasNext())
+                {
+                    double t = found.next().tStart;
+                    if (t > T_FIRST)
+                        index.add( EventIndex.INGRESS, BODIES[p], 0, t, sign );
+                }
+            }
+            if (BODIES[p] == Ephemeris.SUN  ||  BODIES[p] == Ephemeris.MOON)
+                continue;
+            Search.Event event = search.parseSearch( NAMES[p] + " rx" );
+            Iterator<Search.SearchResult> found = search.searchAll( event, T_FIRST - LEAD_TIME, T_LAST );
+            while (found.hasNext())
+            {
+                Search.SearchResult result = found.next();
+                if (result.tStart > T_FIRST)
+                    index.add( EventIndex.STATION, BODIES[p], 0, result.tStart, 1 );
+                if (result.tEnd > T_FIRST  &&  result.tEnd < T_LAST)
+                    index.add( EventIndex.STATION, BODIES[p], 0, result.tEnd, 0 );
+            }
+        }
+    }
+
+    /**
+     * Sample all the positions, and look for where each pair of planets crosses into
+     * each aspect, and where the moon crosses each phase.
+     */
+    static void addAspectsAndPhases( EventIndex index )
+    {
+        int nSamples = (int)Math.ceil( (T_LAST - T_FIRST) / SAMPLE_STEP ) + 1;
+        double[][] pos = new double[ BODIES.length ][ nSamples ];
+        for (int p=0; p < BODIES.length; p++)
+            for (int n=0; n < nSamples; n++)
+                pos[p][n] = ChartData.geoLongitude( BODIES[p], sampleTime( n ) );
+        for (int p1=0; p1 < BODIES.length; p1++)
+        {
+            for (int p2=p1+1; p2 < BODIES.length; p2++)
+            {
+                if (BODIES[p1] == Ephemeris.MOON  ||  BODIES[p2] == Ephemeris.MOON)
+                    continue;
+                // the handles are in order, apart from the moon's
+                for (int a=0; a < ASPECTS.length; a++)
+                    addCrossings( index, EventIndex.ASPECT, BODIES[p1], BODIES[p2], ASPECTS[a], true, pos[p1], pos[p2], nSamples );
+            }
+        }
+        for (int a=0; a < PHASES.length; a++)
+            addCrossings( index, EventIndex.PHASE, Ephemeris.MOON, Ephemeris.SUN, PHASES[a], false, pos[1], pos[0], nSamples );
+    }
+
+    static double sampleTime( int n )
+    {
+        return Math.min( T_FIRST + n * SAMPLE_STEP, T_LAST );
+    }
+
+    /**
+     * Find where the angle from body b2 to body b1 passes 'degrees', in either
+     * direction when 'either' is set (i.e. an aspect, rather than a phase).
+     */
+    static void addCrossings( EventIndex index, int kind, int b1, int b2, int degrees, boolean either, double[] pos1, double[] pos2, int nSamples )
+    {
+        double angle = Math.toRadians( degrees );
+        double f0 = offset( pos1[0], pos2[0], angle, either );
+        for (int n=1; n < nSamples; n++)
+        {
+            double f1 = offset( pos1[n], pos2[n], angle, either );
+            if (f0 <= 0  &&  f1 > 0  ||  f0 > 0  &&  f1 <= 0)
+            {
+                // bisect down to the time it is exact; the offset also jumps where the
+                // planets are on the far side from the aspect, which doesn't count
+                double tLow = sampleTime( n-1 ), tHigh = sampleTime( n );
+                double fLow = f0;
+                double f = f0;
+                double t = tLow;
+                for (int i=0; i < 60  &&  tHigh - tLow > 1e-8; i++)
+                {
+                    t = (tLow + tHigh) / 2;
+                    f = offset( ChartData.geoLongitude( b1, t ), ChartData.geoLongitude( b2, t ), angle, either );
+                    if ((f <= 0) == (fLow <= 0))
+                    {
+                        tLow = t;
+                        fLow = f;
+                    }
+                    else
+                        tHigh = t;
+                }
+                if (Math.abs( f ) < EXACT)
+                    index.add( kind, b1, b2, t, degrees );
+            }
+            f0 = f1;
+        }
+    }
+
+    /**
+     * How far the angle between two positions is from 'angle', signed so that it
+     * changes sign as it passes through.  For an aspect, either way around counts.
+     */
+    static double offset( double pos1, double pos2, double angle, boolean either )
+    {
+        double sep = ChartData.mod2pi( pos1 - pos2 );
+        if (sep > Math.PI)
+            sep -= 2*Math.PI;
+        if (! either)
+            return signedDiff( sep, angle );
+        if (angle == 0  ||  angle == Math.PI)
+            return signedDiff( sep, angle );
+        return Math.abs( sep ) - angle;
+    }
+    static double signedDiff( double a, double b )
+    {
+        double d = ChartData.mod2pi( a - b );
+        return (d > Math.PI) ? d - 2*Math.PI : d;
+    }
+}
@@ -47,8 +47,49 @@ public class EphemTest
     System.out.printf( "%10s @ %10.0f = %7.3f : %7.3f :: %6.3f\n", planet, t, lngEphem, lngElems, Math.abs(lngElems-lngEphem) );
   }
 
+  /**
+   * Look for jumps in longitude across the whole of each table, which would show up
+   * at a bad seam between files, and check that lookups out of time order agree
+   * with lookups in order.
+   */
+  public static void testSeams()
+  {
+    Ephemeris ephem = Ephemeris.getInstance();
+    String[] planets = { "sun", "moon", "mercury", "venus", "mars", "jupiter", "saturn", "uranus", "neptune", "pluto" };
+    double tStart = 2415000, tEnd = 2488100, step = 0.25;
+    java.util.Random rnd = new java.util.Random( 1 );
+    for (String planet : planets)
+    {
+      int body = Ephemeris.bodyId( planet );
+      int jumps = 0, mismatches = 0, gaps = 0;
+      double prev = Double.NaN;
+      for (double t=tStart; t < tEnd; t += step)
+      {
+        double lng = ephem.longitude( body, t );
+        if (Double.isNaN( lng ) != Double.isNaN( prev ))
+          gaps ++;
+        // no body moves 20 degrees in a quarter of a day
+        if (! Double.isNaN( lng )  &&  ! Double.isNaN( prev )  &&  Math.abs( ChartData.angleDelta( prev, lng ) - Math.PI ) < Math.PI - 20*ChartData.d2r)
+        {
+          System.out.printf( "%10s: jump at %10.2f\n", planet, t );
+          jumps ++;
+        }
+        prev = lng;
+        // random lookup in between, then this time again
+        double tR = tStart + rnd.nextDouble() * (tEnd - tStart);
+        ephem.longitude( body, tR );
+        double again = ephem.longitude( body, t );
+        if (Double.doubleToLongBits( again ) != Double.doubleToLongBits( lng ))
+          mismatches ++;
+      }
+      // each table starts and ends once, but moon has a gap between its two files
+      System.out.printf( "%10s: %d jumps, %d out-of-order mismatches, %d edges\n", planet, jumps, mismatches, gaps );
+    }
+  }
+
   static public void main( String args[] )
   {
+    testSeams();
     double jd = t_to_jd( System.currentTimeMillis() );
     double[] dts = new double[] { -365000, -36500, -18000, -9000, 0, 9000, 18000, 36500 };
     for (double dt : dts)
@@ -1,13 +1,17 @@
 package com.marklipson.astrotools;
 
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.LineNumberReader;
 import java.io.RandomAccessFile;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -189,8 +193,206 @@ public class ProcessHorizonData
           }
     }
 
+    /**
+     * Longitude samples at a fixed interval, in degrees.
+     */
+    private static class Samples
+    {
+        double t0, dt;
+        double[] lng;
+    }
+    /**
+     * Read samples from a binary table written by convert().
+     */
+    private Samples readTable( String inputFile ) throws IOException
+    {
+        DataInputStream in = new DataInputStream( new FileInputStream( inputFile ) );
+        Samples samples = new Samples();
+        byte[] header = new byte[ 16 ];
+        in.readFully( header );
+        samples.t0 = in.readDouble();
+        samples.dt = in.readDouble();
+        in.readDouble();
+        in.readFully( new byte[ 24 ] );
+        List<Double> values = new ArrayList<Double>();
+        while (in.available() > 0)
+            values.add( (double)in.readFloat() );
+        in.close();
+        samples.lng = new double[ values.size() ];
+        for (int n=0; n < samples.lng.length; n++)
+            samples.lng[n] = values.get( n );
+        return samples;
+    }
+    /**
+     * Read samples from a Horizons text file (same columns as convert()).
+     */
+    private Samples readHorizons( Reader source ) throws IOException
+    {
+        LineNumberReader in = new LineNumberReader( source );
+        String line;
+        while ((line = in.readLine()) != null)
+            if (line.equals( "$$SOE" ))
+                break;
+        Samples samples = new Samples();
+        List<Double> values = new ArrayList<Double>();
+        while ((line = in.readLine()) != null)
+        {
+            if (line.equals( "$$EOE" ))
+                break;
+            String[] parts = line.split( "," );
+            if (parts.length != 7)
+            {
+                System.err.println( "skipping line " + in.getLineNumber() );
+                continue;
+            }
+            double JD = Double.parseDouble( parts[0] );
+            if (values.size() == 0)
+                samples.t0 = JD;
+            if (values.size() == 1)
+                samples.dt = JD - samples.t0;
+            values.add( Double.parseDouble( parts[5] ) );
+        }
+        in.close();
+        samples.lng = new double[ values.size() ];
+        for (int n=0; n < samples.lng.length; n++)
+            samples.lng[n] = values.get( n );
+        return samples;
+    }
+
+    /**
+     * Fit Chebyshev polynomials to longitude samples, one set of coefficients per fixed
+     * interval, in the manner of the JPL DE files.
+     * 
+     * The source is either a binary table written by convert() (.lng) or a Horizons
+     * text file.  The output has the same 64 byte header as a .lng file, except that the
+     * interval takes the place of the sample spacing and the number of coefficients
+     * follows the end time:
+     *   char name[16];  double t0, interval, t1;  int nCoef;  (padding to 64 bytes)
+     * followed by nCoef floats per interval, in degrees, for the polynomials in
+     * x = 2*(t - tStart)/interval - 1.  The table ends where the samples do, so the
+     * last interval may be cut short.
+     */
+    public void convertChebyshev( String inputFile, String objectName, String outputFile, double interval, int nCoef )
+    {
+        try
+        {
+            Samples samples;
+            if (inputFile.endsWith( ".lng" ))
+                samples = readTable( inputFile );
+            else
+                samples = readHorizons( new FileReader( inputFile ) );
+            // remove the wrap at 360 so the curve is continuous
+            double[] lng = samples.lng;
+            for (int n=1; n < lng.length; n++)
+                lng[n] -= 360 * Math.round( (lng[n] - lng[n-1]) / 360 );
+            int perInterval = (int)Math.round( interval / samples.dt );
+            if (perInterval + 1 < nCoef)
+                throw new IOException( "too few samples per interval for " + nCoef + " coefficients" );
+            int nSteps = lng.length - 1;
+            int nIntervals = (nSteps + perInterval - 1) / perInterval;
+            DataOutputStream out = new DataOutputStream( new FileOutputStream( outputFile ) );
+            String paddedName = objectName.toUpperCase();
+            while (paddedName.length() < 16)
+                paddedName += " ";
+            out.writeBytes( paddedName );
+            out.writeDouble( samples.t0 );
+            out.writeDouble( perInterval * samples.dt );
+            out.writeDouble( samples.t0 + nSteps * samples.dt );
+            out.writeInt( nCoef );
+            out.write( new byte[ 20 ] );
+            double maxErr = 0;
+            for (int nI=0; nI < nIntervals; nI++)
+            {
+                int first = nI * perInterval;
+                int last = Math.min( first + perInterval, nSteps );
+                // the last interval may be cut short - fit it to a full interval's worth
+                // of samples, taking the rest from before it (x < -1)
+                int from = Math.max( last - perInterval, 0 );
+                // keep the constant term within 0..360
+                double base = 360 * Math.floor( lng[first] / 360 );
+                double[] x = new double[ last - from + 1 ];
+                double[] y = new double[ last - from + 1 ];
+                for (int n=from; n <= last; n++)
+                {
+                    x[n-from] = 2.0 * (n - first) / perInterval - 1;
+                    y[n-from] = lng[n] - base;
+                }
+                double[] coef = fitChebyshev( x, y, nCoef );
+                for (int n=0; n < nCoef; n++)
+                    out.writeFloat( (float)coef[n] );
+                for (int n=first-from; n < x.length; n++)
+                    maxErr = Math.max( maxErr, Math.abs( evalChebyshev( coef, x[n] ) - y[n] ) );
+            }
+            out.close();
+            System.out.printf( "%s: %d intervals, %d coefficients, max error %.2f arcsec\n", objectName, nIntervals, nCoef, maxErr * 3600 );
+        }
+        catch( IOException x )
+        {
+            x.printStackTrace( System.err );
+        }
+    }
+    /**
+     * Least squares fit of a Chebyshev series to points in -1..1.
+     */
+    private static double[] fitChebyshev( double[] x, double[] y, int nCoef )
+    {
+        // normal equations
+        double[][] m = new double[ nCoef ][ nCoef + 1 ];
+        double[] T = new double[ nCoef ];
+        for (int nP=0; nP < x.length; nP++)
+        {
+            T[0] = 1;
+            if (nCoef > 1)
+                T[1] = x[nP];
+            for (int k=2; k < nCoef; k++)
+                T[k] = 2 * x[nP] * T[k-1] - T[k-2];
+            for (int r=0; r < nCoef; r++)
+            {
+                for (int c=0; c < nCoef; c++)
+                    m[r][c] += T[r] * T[c];
+                m[r][nCoef] += T[r] * y[nP];
+            }
+        }
+        // gaussian elimination with partial pivoting
+        for (int c=0; c < nCoef; c++)
+        {
+            int pivot = c;
+            for (int r=c+1; r < nCoef; r++)
+                if (Math.abs( m[r][c] ) > Math.abs( m[pivot][c] ))
+                    pivot = r;
+            double[] tmp = m[c];  m[c] = m[pivot];  m[pivot] = tmp;
+            for (int r=c+1; r < nCoef; r++)
+            {
+                double f = m[r][c] / m[c][c];
+                for (int k=c; k <= nCoef; k++)
+                    m[r][k] -= f * m[c][k];
+            }
+        }
+        double[] coef = new double[ nCoef ];
+        for (int r=nCoef-1; r >= 0; r--)
+        {
+            double v = m[r][nCoef];
+            for (int k=r+1; k < nCoef; k++)
+                v -= m[r][k] * coef[k];
+            coef[r] = v / m[r][r];
+        }
+        return coef;
+    }
+    private static double evalChebyshev( double[] coef, double x )
+    {
+        double b1 = 0, b2 = 0;
+        for (int k=coef.length-1; k >= 1; k--)
+        {
+            double b = coef[k] + 2 * x * b1 - b2;
+            b2 = b1;
+            b1 = b;
+        }
+        return coef[0] + x * b1 - b2;
+    }
+
     /**
      * args: (-oe) (-php) inputFile objectName outputFile
+     *       -cheb inputFile objectName outputFile interval coefficients
      * 
      * input file is from JPL Horizons system with certain columns enabled (see sample line in code above)
      * object name is EARTH, MOON, etc.
@@ -199,12 +401,22 @@ public class ProcessHorizonData
      * 
      * Orbital element files have no header, just 36 byte records containing:
      *   double JD;  float A, E, peri, node, incl, mean longitude, mean daily motion;
+     * 
+     * Chebyshev files (-cheb) are described at convertChebyshev().  The input may be a
+     * Horizons file or a .lng file.
      */
     public static void main(String[] args)
     {
         if (args.length < 3)
             return;
         int nArg = 0;
+        if (args[nArg].equals( "-cheb" ))
+        {
+          if (args.length < 6)
+            return;
+          new ProcessHorizonData().convertChebyshev( args[1], args[2], args[3], Double.parseDouble( args[4] ), Integer.parseInt( args[5] ) );
+          return;
+        }
         boolean elements = false;
         boolean phpMode = false;
         if (args[nArg].equals( "-oe" ))
@@ -0,0 +1,74 @@
+package com.marklipson.astrotools;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.marklipson.astrologyclock.ChartWheel;
+import com.marklipson.astrologyclock.Search;
+
+/**
+ * Check that searches chained from one result to the next find every occurrence,
+ * as the search panel does when it starts each search from the last result.
+ *
+ * For each search, all the occurrences in a span of time are listed with
+ * searchAll(), and then search() is run from the start, peak and end of each one,
+ * which must find the one after it (or before it, searching backward).
+ */
+public class SearchTest
+{
+  static final double T_FROM = 2449718.5;   // 1995-01-01
+  static final double T_TO = 2451910.5;     // 2001-01-01
+  // how closely results have to agree, days
+  static final double TOLERANCE = 1e-4;
+
+  static final String[] SEARCHES = {
+    "mercury rx", "venus rx", "mars in le", "sun in ge", "moon in ar and mars in ta",
+    "not moon in ar", "mars trine jupiter", "mercury rx and moon in le"
+  };
+
+  public static void main( String[] args ) throws Exception
+  {
+    ChartWheel chart = new ChartWheel( null, null );
+    Search search = new Search( chart.getMainRing() );
+    int nFailed = 0;
+    for (String text : SEARCHES)
+    {
+      Search.Event event = search.parseSearch( text );
+      nFailed += testChaining( search, event, text, true );
+      nFailed += testChaining( search, event, text, false );
+    }
+    System.out.println( (nFailed == 0) ? "OK" : nFailed + " FAILED" );
+    System.exit( (nFailed == 0) ? 0 : 1 );
+  }
+
+  /**
+   * Chain searches from each occurrence of an event, returning the number that
+   * didn't find the next one.
+   */
+  static int testChaining( Search search, Search.Event event, String text, boolean forward ) throws Search.SearchTimeout
+  {
+    List<Search.SearchResult> all = new ArrayList<Search.SearchResult>();
+    Iterator<Search.SearchResult> i = forward ? search.searchAll( event, T_FROM, T_TO ) : search.searchAll( event, T_TO, T_FROM );
+    while (i.hasNext())
+      all.add( i.next() );
+    int nFailed = 0;
+    for (int n=0; n+1 < all.size(); n++)
+    {
+      Search.SearchResult from = all.get( n ), expected = all.get( n+1 );
+      double[] starts = { from.tStart, from.tPeak, from.tEnd };
+      for (double t : starts)
+      {
+        Search.SearchResult found = search.search( t, event, forward, 60000 );
+        if (Math.abs( found.tStart - expected.tStart ) > TOLERANCE  ||  Math.abs( found.tEnd - expected.tEnd ) > TOLERANCE)
+        {
+          System.out.printf( "%s (%s) from %.5f: found %.5f-%.5f, expected %.5f-%.5f\n",
+              text, forward ? "forward" : "backward", t, found.tStart, found.tEnd, expected.tStart, expected.tEnd );
+          nFailed ++;
+        }
+      }
+    }
+    System.out.printf( "%-30s %-8s %d results, %d failed\n", text, forward ? "forward" : "backward", all.size(), nFailed );
+    return nFailed;
+  }
+}
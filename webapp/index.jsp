@@ -53,6 +53,7 @@
         <li>1321009871</li>
       </ul>
       The timezone can be specified with the "z" parameter.
+      Charts of the current time are redrawn once a minute, and can be cached until then.
     </dd>
     <dt>z</dt>
     <dd>